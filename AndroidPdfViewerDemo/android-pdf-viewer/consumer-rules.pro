@@ -0,0 +1,5 @@
+# Rules applied to applications using the library
+
+# PdfFile closes single pages through internals of pdfium-android
+# (PdfDocument.mNativePagesPtr, PdfiumCore.nativeClosePage and PdfiumCore.lock)
+-keep class com.shockwave.pdfium.** { *; }
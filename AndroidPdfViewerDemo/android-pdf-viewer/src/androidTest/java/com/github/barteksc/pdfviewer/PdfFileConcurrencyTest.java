@@ -0,0 +1,211 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.github.barteksc.pdfviewer.util.FitPolicy;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.util.Size;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders pages of one document from several threads, like rendering workers and the UI thread do,
+ * while the limit of open pages keeps closing them. Pages of the test document are filled black,
+ * so a page rendered from a closed or wrong native page is noticed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PdfFileConcurrencyTest {
+
+    private static final int THREADS = 4;
+
+    private static final int RENDERS_PER_THREAD = 200;
+
+    private static final int BITMAP_SIZE = 32;
+
+    private static final float ZOOM = 1.5f;
+
+    private PdfiumCore pdfiumCore;
+
+    private PdfFile pdfFile;
+
+    private int maxOpenPages;
+
+    /** First exception thrown by a rendering thread */
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        maxOpenPages = Constants.Cache.MAX_OPEN_PAGES;
+        Constants.Cache.MAX_OPEN_PAGES = 2;
+
+        Context context = InstrumentationRegistry.getContext();
+        pdfiumCore = new PdfiumCore(InstrumentationRegistry.getTargetContext());
+        PdfDocument document = pdfiumCore.newDocument(readAsset(context, "pages.pdf"));
+        pdfFile = new PdfFile(pdfiumCore, document, FitPolicy.WIDTH, new Size(400, 600), null,
+                true, 10, false, false, 0, null);
+    }
+
+    @After
+    public void tearDown() {
+        Constants.Cache.MAX_OPEN_PAGES = maxOpenPages;
+        pdfFile.dispose();
+    }
+
+    @Test
+    public void rendersWhilePagesAreClosed() throws Throwable {
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = startThreads(new Worker() {
+            @Override
+            public void run(Random random, Bitmap bitmap) {
+                float offset = random.nextFloat() * pdfFile.getDocLen(ZOOM);
+                int page = pdfFile.getPageAtOffset(offset, ZOOM);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                if (!pdfFile.renderPageBitmap(bitmap, page, new Rect(0, 0, BITMAP_SIZE, BITMAP_SIZE), false)
+                        || bitmap.getPixel(BITMAP_SIZE / 2, BITMAP_SIZE / 2) != Color.BLACK) {
+                    failures.incrementAndGet();
+                }
+            }
+        });
+        join(threads);
+
+        assertEquals(0, failures.get());
+        assertTrue(pdfFile.getClosedPagesCount() > 0);
+        for (int i = 0; i < pdfFile.getPagesCount(); i++) {
+            assertFalse(pdfFile.pageHasError(i));
+        }
+    }
+
+    @Test
+    public void disposesWhilePagesAreRendered() throws Throwable {
+        final CountDownLatch rendering = new CountDownLatch(THREADS);
+        final AtomicInteger rendered = new AtomicInteger();
+        final AtomicInteger renderedAfterDispose = new AtomicInteger();
+        final boolean[] disposed = new boolean[1];
+        List<Thread> threads = startThreads(new Worker() {
+            @Override
+            public void run(Random random, Bitmap bitmap) {
+                boolean wasDisposed;
+                synchronized (disposed) {
+                    wasDisposed = disposed[0];
+                }
+                int page = random.nextInt(pdfFile.getPagesCount());
+                if (pdfFile.renderPageBitmap(bitmap, page, new Rect(0, 0, BITMAP_SIZE, BITMAP_SIZE), false)) {
+                    if (wasDisposed) {
+                        renderedAfterDispose.incrementAndGet();
+                    } else if (rendered.incrementAndGet() <= THREADS) {
+                        rendering.countDown();
+                    }
+                }
+            }
+        });
+
+        assertTrue(rendering.await(10, TimeUnit.SECONDS));
+        synchronized (disposed) {
+            pdfFile.dispose();
+            disposed[0] = true;
+        }
+        join(threads);
+
+        assertEquals(0, renderedAfterDispose.get());
+        // neither opens nor reports an error for a document closed on purpose
+        assertFalse(pdfFile.openPage(pdfFile.getPagesCount() - 1));
+        Bitmap bitmap = Bitmap.createBitmap(BITMAP_SIZE, BITMAP_SIZE, Bitmap.Config.ARGB_8888);
+        assertFalse(pdfFile.renderPageBitmap(bitmap, 0, new Rect(0, 0, BITMAP_SIZE, BITMAP_SIZE), false));
+        bitmap.recycle();
+    }
+
+    private List<Thread> startThreads(final Worker worker) {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int seed = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    Bitmap bitmap = Bitmap.createBitmap(BITMAP_SIZE, BITMAP_SIZE, Bitmap.Config.ARGB_8888);
+                    try {
+                        for (int j = 0; j < RENDERS_PER_THREAD; j++) {
+                            worker.run(random, bitmap);
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        bitmap.recycle();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private void join(List<Thread> threads) throws Throwable {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse("Rendering thread is stuck", thread.isAlive());
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    private static byte[] readAsset(Context context, String name) throws IOException {
+        InputStream input = context.getAssets().open(name);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private interface Worker {
+        void run(Random random, Bitmap bitmap);
+    }
+}
@@ -125,6 +125,19 @@ class AnimationManager {
         return flinging || pageFlinging;
     }
 
+    /**
+     * Store offset of the view where the running fling will stop, as projected by the scroller from its velocity
+     *
+     * @return false if no fling is running
+     */
+    boolean getFlingFinalOffset(PointF out) {
+        if (!flinging || scroller.isFinished()) {
+            return false;
+        }
+        out.set(scroller.getFinalX(), scroller.getFinalY());
+        return true;
+    }
+
     class XAnimation extends AnimatorListenerAdapter implements AnimatorUpdateListener {
 
         @Override
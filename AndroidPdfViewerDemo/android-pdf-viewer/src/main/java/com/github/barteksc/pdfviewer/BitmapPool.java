@@ -0,0 +1,146 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps bitmaps of parts evicted from {@link CacheManager}, so they can be reused for new parts
+ * of the same size and config instead of allocating a new bitmap for every part.
+ * <p>
+ * Reused bitmaps are erased, as Pdfium doesn't always paint the whole bitmap, e.g. parts reaching
+ * past the page edge or rendered with annotations, so pixels of an earlier part could show through.
+ * When total size of kept bitmaps exceeds the limit, the least recently released are recycled.
+ * <p>
+ * Thread safe, bitmaps are acquired by rendering threads and released on the UI thread.
+ */
+class BitmapPool {
+
+    private final int maxSize;
+
+    /** Unused bitmaps by {@link #key(int, int, Bitmap.Config)} */
+    private final LongSparseArray<ArrayDeque<Bitmap>> bitmaps = new LongSparseArray<>();
+
+    /** All unused bitmaps, least recently released first */
+    private final ArrayDeque<Bitmap> releaseOrder = new ArrayDeque<>();
+
+    private int size = 0;
+
+    private int hits = 0;
+
+    private int misses = 0;
+
+    /**
+     * @param maxSize maximum size of kept bitmaps, in bytes
+     */
+    BitmapPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a mutable bitmap of given size and config, reusing a released one if possible
+     *
+     * @throws IllegalArgumentException if a new bitmap cannot be created with given size
+     */
+    Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap;
+        synchronized (this) {
+            ArrayDeque<Bitmap> queue = bitmaps.get(key(width, height, config));
+            bitmap = queue != null ? queue.pollLast() : null;
+            if (bitmap != null) {
+                releaseOrder.removeLastOccurrence(bitmap);
+                size -= bitmap.getByteCount();
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        // transparent, like a new bitmap
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Return a bitmap which is no longer used, it will be recycled if it cannot be kept
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int byteCount = bitmap.getByteCount();
+        if (!bitmap.isMutable() || byteCount > maxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> queue = bitmaps.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            bitmaps.put(key, queue);
+        }
+        queue.addLast(bitmap);
+        releaseOrder.addLast(bitmap);
+        size += byteCount;
+
+        trimToSize(maxSize);
+    }
+
+    /** Recycle all kept bitmaps */
+    synchronized void clear() {
+        trimToSize(0);
+    }
+
+    synchronized int getSize() {
+        return size;
+    }
+
+    /** Number of acquired bitmaps which were reused */
+    synchronized int getHits() {
+        return hits;
+    }
+
+    /** Number of acquired bitmaps which had to be created */
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    private void trimToSize(int maxSize) {
+        while (size > maxSize && !releaseOrder.isEmpty()) {
+            Bitmap bitmap = releaseOrder.pollFirst();
+            long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayDeque<Bitmap> queue = bitmaps.get(key);
+            queue.removeFirstOccurrence(bitmap);
+            if (queue.isEmpty()) {
+                bitmaps.remove(key);
+            }
+            size -= bitmap.getByteCount();
+            bitmap.recycle();
+        }
+    }
+
+    /** There are less than 8 configs, so the ordinal takes 3 bits below the height */
+    private static long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 3) | config.ordinal();
+    }
+}
@@ -15,45 +15,246 @@
  */
 package com.github.barteksc.pdfviewer;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.RectF;
-import android.support.annotation.Nullable;
+import android.support.v4.util.LongSparseArray;
+import android.util.SparseArray;
 
 import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.TileKey;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.TreeSet;
 
-import static com.github.barteksc.pdfviewer.util.Constants.Cache.CACHE_SIZE;
+import static com.github.barteksc.pdfviewer.util.Constants.Cache.CACHE_MEMORY_RATIO;
 import static com.github.barteksc.pdfviewer.util.Constants.Cache.THUMBNAILS_CACHE_SIZE;
 
+/**
+ * Keeps rendered parts and thumbnails within a budget of bitmap bytes. Thumbnails are
+ * limited by count, but their bytes are charged to the same budget as parts.
+ * <p>
+ * Parts are indexed by their {@link TileKey}, while eviction order is kept in sorted sets,
+ * so lookup is O(1) and promotion or eviction O(log n).
+ * <p>
+ * Parts of several zoom levels are kept together. The sharpest levels are evicted first, as coarse
+ * parts are cheap and cover the page while sharper ones are rendered after a zoom change.
+ * <p>
+ * Parts are also kept in per page lists sorted for drawing, updated as parts are cached and evicted,
+ * so a frame walks only parts of visible pages, without copying or sorting the cache. Previews are drawn
+ * below all full parts, as a preview of a sharper level is still blurrier than a full part of a coarser one.
+ */
 class CacheManager {
 
-    private final PriorityQueue<PagePart> passiveCache;
+    /** Distance of tested corners from the edges of an area, relative to its size */
+    private static final float CORNER_INSET = 0.01f;
+
+    private final TreeSet<PagePart> passiveCache;
+
+    private final TreeSet<PagePart> activeCache;
 
-    private final PriorityQueue<PagePart> activeCache;
+    /** All cached parts, passive and active, by key */
+    private final LongSparseArray<PagePart> partsIndex = new LongSparseArray<>();
+
+    /** Cached parts of every page in the order they are drawn in, see {@link #compareDrawOrder(PagePart, PagePart)} */
+    private final SparseArray<ArrayList<PagePart>> drawLists = new SparseArray<>();
 
     private final List<PagePart> thumbnails;
 
+    /** Cached thumbnails by key, guarded by {@link #thumbnails} */
+    private final LongSparseArray<PagePart> thumbnailsIndex = new LongSparseArray<>();
+
     private final Object passiveActiveLock = new Object();
 
     private final PagePartComparator orderComparator = new PagePartComparator();
 
-    public CacheManager() {
-        activeCache = new PriorityQueue<>(CACHE_SIZE, orderComparator);
-        passiveCache = new PriorityQueue<>(CACHE_SIZE, orderComparator);
+    private final BitmapPool bitmapPool;
+
+    /** Budget of bitmap bytes */
+    private int maxSize;
+
+    /** Bytes of cached parts */
+    private int partsSize = 0;
+
+    /** Bytes of cached thumbnails */
+    private int thumbnailsSize = 0;
+
+    public CacheManager(BitmapPool bitmapPool, int maxSize) {
+        this.bitmapPool = bitmapPool;
+        this.maxSize = maxSize;
+        activeCache = new TreeSet<>(orderComparator);
+        passiveCache = new TreeSet<>(orderComparator);
         thumbnails = new ArrayList<>();
     }
 
+    /**
+     * Default budget, a {@link com.github.barteksc.pdfviewer.util.Constants.Cache#CACHE_MEMORY_RATIO}
+     * of memory available to the application
+     */
+    public static int getDefaultMaxSize(Context context) {
+        long available = Runtime.getRuntime().maxMemory();
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            available = Math.min(available, activityManager.getMemoryClass() * 1024L * 1024L);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) (available * CACHE_MEMORY_RATIO));
+    }
+
+    public void setMaxSize(int maxSize) {
+        synchronized (passiveActiveLock) {
+            this.maxSize = maxSize;
+            makeAFreeSpace(0);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Bytes of all cached parts and thumbnails */
+    public int getSize() {
+        synchronized (passiveActiveLock) {
+            return partsSize + thumbnailsSize;
+        }
+    }
+
+    /**
+     * @param partSize bytes of a single part
+     * @return how many parts of given size fit in the budget left by thumbnails, at least 1
+     */
+    public int getPartsCapacity(int partSize) {
+        synchronized (passiveActiveLock) {
+            return Math.max(1, (maxSize - thumbnailsSize) / Math.max(1, partSize));
+        }
+    }
+
     public void cachePart(PagePart part) {
         synchronized (passiveActiveLock) {
-            // If cache too big, remove and recycle
-            makeAFreeSpace();
+            PagePart cached = partsIndex.get(part.getKey());
+            if (cached != null) {
+                if (!cached.isPreview() || part.isPreview()) {
+                    // Part may be rendered again while the previous one was on its way to the cache
+                    bitmapPool.release(part.getRenderedBitmap());
+                    return;
+                }
+                // Full part takes the slot of its preview
+                if (!activeCache.remove(cached)) {
+                    passiveCache.remove(cached);
+                }
+                evict(cached);
+            }
+
+            int size = sizeOf(part);
+
+            // If cache too big, remove and return bitmaps to the pool
+            makeAFreeSpace(size);
 
             // Then add part
-            activeCache.offer(part);
+            activeCache.add(part);
+            partsIndex.put(part.getKey(), part);
+            addToDrawList(part);
+            partsSize += size;
+        }
+    }
+
+    /** Insert the part after parts of its page drawn before or together with it */
+    private void addToDrawList(PagePart part) {
+        ArrayList<PagePart> drawList = drawLists.get(part.getPage());
+        if (drawList == null) {
+            drawList = new ArrayList<>();
+            drawLists.put(part.getPage(), drawList);
+        }
+        int low = 0;
+        int high = drawList.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareDrawOrder(drawList.get(middle), part) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        drawList.add(low, part);
+    }
+
+    /**
+     * Previews go first, then full parts, both from the coarsest to the sharpest level,
+     * so sharper parts are drawn on top and a preview never covers a full part
+     */
+    private static int compareDrawOrder(PagePart part1, PagePart part2) {
+        if (part1.isPreview() != part2.isPreview()) {
+            return part1.isPreview() ? -1 : 1;
+        }
+        int level1 = TileKey.level(part1.getKey());
+        int level2 = TileKey.level(part2.getKey());
+        return level1 < level2 ? -1 : (level1 == level2 ? 0 : 1);
+    }
+
+    /**
+     * Return true if the area of the page is covered by full parts of a single level in the given range,
+     * used to skip previews which would not show anything sharper. Parts of a level tile the page with cells
+     * at least as large as cells of sharper levels, so the area is covered if each of its corners is.
+     *
+     * @param minLevel coarsest level of covering parts
+     * @param maxLevel level after the sharpest level of covering parts
+     * @param bounds   page relative bounds of the area, no larger than a cell of the sharpest level
+     */
+    public boolean isCoveredByFullParts(int page, int minLevel, int maxLevel, RectF bounds) {
+        synchronized (passiveActiveLock) {
+            ArrayList<PagePart> drawList = drawLists.get(page);
+            if (drawList == null) {
+                return false;
+            }
+            // corners moved inside, so the cells they fall in are the cells the area intersects
+            float insetX = bounds.width() * CORNER_INSET;
+            float insetY = bounds.height() * CORNER_INSET;
+            float left = bounds.left + insetX;
+            float top = bounds.top + insetY;
+            float right = bounds.right - insetX;
+            float bottom = bounds.bottom - insetY;
+            int coveredLevel = Integer.MIN_VALUE;
+            int coveredCorners = 0;
+            for (int i = 0, size = drawList.size(); i < size; i++) {
+                PagePart part = drawList.get(i);
+                int partLevel = TileKey.level(part.getKey());
+                if (part.isPreview() || partLevel < minLevel || partLevel >= maxLevel) {
+                    continue;
+                }
+                if (partLevel != coveredLevel) {
+                    // full parts are sorted by level, so parts of one level are next to each other
+                    coveredLevel = partLevel;
+                    coveredCorners = 0;
+                }
+                RectF partBounds = part.getPageRelativeBounds();
+                coveredCorners |= (partBounds.contains(left, top) ? 1 : 0)
+                        | (partBounds.contains(right, top) ? 2 : 0)
+                        | (partBounds.contains(left, bottom) ? 4 : 0)
+                        | (partBounds.contains(right, bottom) ? 8 : 0);
+                if (coveredCorners == 15) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Remove all parts of the page, thumbnails are kept. Used when the grid of parts of the page changes,
+     * so cached parts cover other regions than parts with the same key would now
+     */
+    public void removePageParts(int page) {
+        synchronized (passiveActiveLock) {
+            ArrayList<PagePart> drawList;
+            while ((drawList = drawLists.get(page)) != null) {
+                PagePart part = drawList.get(drawList.size() - 1);
+                if (!activeCache.remove(part)) {
+                    passiveCache.remove(part);
+                }
+                evict(part);
+            }
         }
     }
 
@@ -64,94 +265,139 @@ class CacheManager {
         }
     }
 
-    private void makeAFreeSpace() {
+    /**
+     * Evict parts until there is room for the given number of bytes
+     */
+    private void makeAFreeSpace(int needed) {
         synchronized (passiveActiveLock) {
-            while ((activeCache.size() + passiveCache.size()) >= CACHE_SIZE &&
+            while (partsSize + thumbnailsSize + needed > maxSize &&
                     !passiveCache.isEmpty()) {
-                PagePart part = passiveCache.poll();
-                part.getRenderedBitmap().recycle();
+                evict(passiveCache.pollFirst());
             }
 
-            while ((activeCache.size() + passiveCache.size()) >= CACHE_SIZE &&
+            while (partsSize + thumbnailsSize + needed > maxSize &&
                     !activeCache.isEmpty()) {
-                activeCache.poll().getRenderedBitmap().recycle();
+                evict(activeCache.pollFirst());
             }
         }
     }
 
+    private void evict(PagePart part) {
+        partsIndex.delete(part.getKey());
+        removeFromDrawList(part);
+        partsSize -= sizeOf(part);
+        bitmapPool.release(part.getRenderedBitmap());
+    }
+
+    /** Remove the part by identity, parts of different levels may have equal bounds */
+    private void removeFromDrawList(PagePart part) {
+        ArrayList<PagePart> drawList = drawLists.get(part.getPage());
+        if (drawList == null) {
+            return;
+        }
+        for (int i = 0; i < drawList.size(); i++) {
+            if (drawList.get(i) == part) {
+                drawList.remove(i);
+                break;
+            }
+        }
+        if (drawList.isEmpty()) {
+            drawLists.remove(part.getPage());
+        }
+    }
+
+    private static int sizeOf(PagePart part) {
+        Bitmap bitmap = part.getRenderedBitmap();
+        return bitmap != null ? bitmap.getByteCount() : 0;
+    }
+
     public void cacheThumbnail(PagePart part) {
         synchronized (thumbnails) {
-            // If cache too big, remove and recycle
+            // If cache too big, remove and return bitmaps to the pool
             while (thumbnails.size() >= THUMBNAILS_CACHE_SIZE) {
-                thumbnails.remove(0).getRenderedBitmap().recycle();
+                PagePart removed = thumbnails.remove(0);
+                thumbnailsIndex.delete(removed.getKey());
+                updateThumbnailsSize(-sizeOf(removed));
+                bitmapPool.release(removed.getRenderedBitmap());
             }
 
             // Then add thumbnail
-            addWithoutDuplicates(thumbnails, part);
+            if (addWithoutDuplicates(part)) {
+                updateThumbnailsSize(sizeOf(part));
+            }
         }
 
     }
 
-    public boolean upPartIfContained(int page, RectF pageRelativeBounds, int toOrder) {
-        PagePart fakePart = new PagePart(page, null, pageRelativeBounds, false, 0);
-
-        PagePart found;
+    /**
+     * Move the part with given key to the active set, if it is cached
+     *
+     * @return true if the part is cached at full resolution, false for a preview,
+     * so its full part is still requested
+     */
+    public boolean upPartIfContained(long key, int toOrder) {
         synchronized (passiveActiveLock) {
-            if ((found = find(passiveCache, fakePart)) != null) {
-                passiveCache.remove(found);
+            PagePart found = partsIndex.get(key);
+            if (found == null) {
+                return false;
+            }
+            if (passiveCache.remove(found)) {
                 found.setCacheOrder(toOrder);
-                activeCache.offer(found);
-                return true;
+                activeCache.add(found);
             }
-
-            return find(activeCache, fakePart) != null;
+            return !found.isPreview();
         }
     }
 
     /**
-     * Return true if already contains the described PagePart
+     * Return true if the part with given key is cached, including a preview
      */
-    public boolean containsThumbnail(int page, RectF pageRelativeBounds) {
-        PagePart fakePart = new PagePart(page, null, pageRelativeBounds, true, 0);
-        synchronized (thumbnails) {
-            for (PagePart part : thumbnails) {
-                if (part.equals(fakePart)) {
-                    return true;
-                }
-            }
-            return false;
+    public boolean containsPart(long key) {
+        synchronized (passiveActiveLock) {
+            return partsIndex.get(key) != null;
         }
     }
 
     /**
-     * Add part if it doesn't exist, recycle bitmap otherwise
+     * Return true if already contains the thumbnail with given key
      */
-    private void addWithoutDuplicates(Collection<PagePart> collection, PagePart newPart) {
-        for (PagePart part : collection) {
-            if (part.equals(newPart)) {
-                newPart.getRenderedBitmap().recycle();
-                return;
-            }
+    public boolean containsThumbnail(long key) {
+        synchronized (thumbnails) {
+            return thumbnailsIndex.get(key) != null;
         }
-        collection.add(newPart);
     }
 
-    @Nullable
-    private static PagePart find(PriorityQueue<PagePart> vector, PagePart fakePart) {
-        for (PagePart part : vector) {
-            if (part.equals(fakePart)) {
-                return part;
-            }
+    private void updateThumbnailsSize(int delta) {
+        synchronized (passiveActiveLock) {
+            thumbnailsSize += delta;
+            makeAFreeSpace(0);
         }
-        return null;
     }
 
-    public List<PagePart> getPageParts() {
-        synchronized (passiveActiveLock) {
-            List<PagePart> parts = new ArrayList<>(passiveCache);
-            parts.addAll(activeCache);
-            return parts;
+    /**
+     * Add part if it doesn't exist, return bitmap to the pool otherwise
+     *
+     * @return true if the part was added
+     */
+    private boolean addWithoutDuplicates(PagePart newPart) {
+        if (thumbnailsIndex.get(newPart.getKey()) != null) {
+            bitmapPool.release(newPart.getRenderedBitmap());
+            return false;
         }
+        thumbnails.add(newPart);
+        thumbnailsIndex.put(newPart.getKey(), newPart);
+        return true;
+    }
+
+    /**
+     * Parts are cached on the UI thread, so the returned list can be read there without copying,
+     * but it must not be kept or modified
+     *
+     * @return cached parts of the page from the coarsest to the sharpest level, so sharper parts
+     * are drawn on top, or null if no part of the page is cached
+     */
+    public List<PagePart> getPageParts(int page) {
+        return drawLists.get(page);
     }
 
     public List<PagePart> getThumbnails() {
@@ -170,22 +416,39 @@ class CacheManager {
                 part.getRenderedBitmap().recycle();
             }
             activeCache.clear();
+            partsIndex.clear();
+            drawLists.clear();
+            partsSize = 0;
         }
         synchronized (thumbnails) {
             for (PagePart part : thumbnails) {
                 part.getRenderedBitmap().recycle();
             }
             thumbnails.clear();
+            thumbnailsIndex.clear();
+            updateThumbnailsSize(-thumbnailsSize);
         }
     }
 
+    /**
+     * Orders parts by eviction priority: sharpest level first, then by cache order,
+     * then by key, as parts in a set must be distinct
+     */
     class PagePartComparator implements Comparator<PagePart> {
         @Override
         public int compare(PagePart part1, PagePart part2) {
-            if (part1.getCacheOrder() == part2.getCacheOrder()) {
+            int level1 = TileKey.level(part1.getKey());
+            int level2 = TileKey.level(part2.getKey());
+            if (level1 != level2) {
+                return level1 > level2 ? -1 : 1;
+            }
+            if (part1.getCacheOrder() != part2.getCacheOrder()) {
+                return part1.getCacheOrder() > part2.getCacheOrder() ? 1 : -1;
+            }
+            if (part1.getKey() == part2.getKey()) {
                 return 0;
             }
-            return part1.getCacheOrder() > part2.getCacheOrder() ? 1 : -1;
+            return part1.getKey() > part2.getKey() ? 1 : -1;
         }
     }
 
@@ -18,11 +18,17 @@ package com.github.barteksc.pdfviewer;
 import android.os.AsyncTask;
 
 import com.github.barteksc.pdfviewer.source.DocumentSource;
+import com.github.barteksc.pdfviewer.listener.OnLoadProgressListener;
+import com.github.barteksc.pdfviewer.source.FingerprintSource;
+import com.github.barteksc.pdfviewer.source.ProgressSource;
+import com.github.barteksc.pdfviewer.util.Constants;
 import com.shockwave.pdfium.PdfDocument;
 import com.shockwave.pdfium.PdfiumCore;
 import com.shockwave.pdfium.util.Size;
 
-class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
+import java.util.Arrays;
+
+class DecodingAsyncTask extends AsyncTask<Void, Long, Throwable> {
 
     private boolean cancelled;
 
@@ -33,6 +39,7 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
     private DocumentSource docSource;
     private int[] userPages;
     private PdfFile pdfFile;
+    private DiskTileCache diskTileCache;
 
     DecodingAsyncTask(DocumentSource docSource, String password, int[] userPages, PDFView pdfView, PdfiumCore pdfiumCore) {
         this.docSource = docSource;
@@ -46,9 +53,34 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
     @Override
     protected Throwable doInBackground(Void... params) {
         try {
+            if (docSource instanceof ProgressSource && pdfView.callbacks.hasOnLoadProgress()) {
+                ((ProgressSource) docSource).setOnLoadProgressListener(new OnLoadProgressListener() {
+                    @Override
+                    public void onLoadProgress(long loadedBytes, long totalBytes) {
+                        publishProgress(loadedBytes, totalBytes);
+                    }
+                });
+            }
             PdfDocument pdfDocument = docSource.createDocument(pdfView.getContext(), pdfiumCore, password);
+            String fingerprint = null;
+            if ((pdfView.isDiskCacheEnabled() || pdfView.isLayoutCacheEnabled())
+                    && docSource instanceof FingerprintSource) {
+                fingerprint = ((FingerprintSource) docSource).getFingerprint(pdfView.getContext());
+                if (fingerprint != null) {
+                    // pages are identified by user pages, so a different selection of pages is another document
+                    fingerprint += Arrays.toString(userPages);
+                }
+            }
+            PageSizesCache pageSizesCache = null;
+            if (fingerprint != null && pdfView.isLayoutCacheEnabled()) {
+                pageSizesCache = new PageSizesCache(pdfView.getContext(), fingerprint);
+            }
             pdfFile = new PdfFile(pdfiumCore, pdfDocument, pdfView.getPageFitPolicy(), getViewSize(),
-                    userPages, pdfView.isSwipeVertical(), pdfView.getSpacingPx(), pdfView.doAutoSpacing());
+                    userPages, pdfView.isSwipeVertical(), pdfView.getSpacingPx(), pdfView.doAutoSpacing(),
+                    pdfView.isLazyPageSizes(), pdfView.getDefaultPage(), pageSizesCache);
+            if (fingerprint != null && pdfView.isDiskCacheEnabled()) {
+                diskTileCache = new DiskTileCache(pdfView.getContext(), fingerprint, Constants.Cache.DISK_CACHE_SIZE);
+            }
             return null;
         } catch (Throwable t) {
             return t;
@@ -59,6 +91,13 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
         return new Size(pdfView.getWidth(), pdfView.getHeight());
     }
 
+    @Override
+    protected void onProgressUpdate(Long... progress) {
+        if (!cancelled) {
+            pdfView.callbacks.callOnLoadProgress(progress[0], progress[1]);
+        }
+    }
+
     @Override
     protected void onPostExecute(Throwable t) {
         if (t != null) {
@@ -66,7 +105,7 @@ class DecodingAsyncTask extends AsyncTask<Void, Void, Throwable> {
             return;
         }
         if (!cancelled) {
-            pdfView.loadComplete(pdfFile);
+            pdfView.loadComplete(pdfFile, diskTileCache);
         }
     }
 
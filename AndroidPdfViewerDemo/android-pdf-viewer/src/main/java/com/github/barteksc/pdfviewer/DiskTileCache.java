@@ -0,0 +1,307 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.Util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Second tier of rendered parts, stored on disk under the application cache directory,
+ * so parts of a document opened again don't have to be rendered by Pdfium.
+ * <p>
+ * Every document has its own directory named after its fingerprint, files hold raw pixels
+ * of a part. All documents share one LRU index limited by total size. Access order is kept
+ * in memory, after a restart it is approximated by time the files were written.
+ * <p>
+ * Parts are read by rendering threads, and written behind by a single background thread.
+ */
+class DiskTileCache {
+
+    private static final String TAG = DiskTileCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "pdfview-parts";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Writes waiting for the writer thread, further parts are not stored to bound memory */
+    private static final int MAX_PENDING_WRITES = 16;
+
+    private static final Object lock = new Object();
+
+    /** Size of cached files by path, in access order, shared by all documents */
+    private static LinkedHashMap<String, Long> entries;
+
+    private static long totalSize = 0;
+
+    private static int pendingWrites = 0;
+
+    private static ExecutorService writer;
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * Blocks while the index is read from disk for the first time, so it shouldn't be called on the UI thread
+     *
+     * @param fingerprint identity of the document, see {@link com.github.barteksc.pdfviewer.source.FingerprintSource}
+     * @param maxSize     total size of cached parts of all documents, in bytes
+     */
+    DiskTileCache(Context context, String fingerprint, long maxSize) {
+        File root = new File(context.getCacheDir(), DIRECTORY);
+        this.directory = new File(root, Util.md5(fingerprint));
+        this.maxSize = maxSize;
+        synchronized (lock) {
+            if (entries == null) {
+                entries = new LinkedHashMap<>(64, 0.75f, true);
+                loadEntries(root);
+                writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "PDF parts writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            trimToSize(maxSize);
+        }
+    }
+
+    /**
+     * Name of the file holding a part, render parameters are included because they change the pixels.
+     * The key identifies only a cell in the grid of the page, which depends on the layout of the view,
+     * so exact page relative bounds are included too and parts of other grids never match.
+     */
+    static String getName(long key, RectF bounds, int width, int height, Bitmap.Config config,
+                          boolean annotationRendering) {
+        return Long.toHexString(key) + "_" + boundsName(bounds) + "_" + width + "x" + height + "_" + config.name()
+                + (annotationRendering ? "_a" : "");
+    }
+
+    private static String boundsName(RectF bounds) {
+        return Integer.toHexString(Float.floatToIntBits(bounds.left))
+                + "-" + Integer.toHexString(Float.floatToIntBits(bounds.top))
+                + "-" + Integer.toHexString(Float.floatToIntBits(bounds.right))
+                + "-" + Integer.toHexString(Float.floatToIntBits(bounds.bottom));
+    }
+
+    /**
+     * Fill the bitmap with the cached part
+     *
+     * @param buffer buffer with capacity of at least byte count of the bitmap
+     * @return false if the part is not cached
+     */
+    boolean read(String name, Bitmap bitmap, ByteBuffer buffer) {
+        File file = new File(directory, name);
+        synchronized (lock) {
+            if (entries.get(file.getPath()) == null) {
+                return false;
+            }
+        }
+
+        int byteCount = bitmap.getByteCount();
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            FileChannel channel = inputStream.getChannel();
+            if (channel.size() != byteCount) {
+                remove(file);
+                return false;
+            }
+            buffer.clear();
+            buffer.limit(byteCount);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full
+            }
+            if (buffer.hasRemaining()) {
+                remove(file);
+                return false;
+            }
+            buffer.flip();
+            bitmap.copyPixelsFromBuffer(buffer);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read part " + file, e);
+            remove(file);
+            return false;
+        } finally {
+            close(inputStream);
+        }
+    }
+
+    /**
+     * Store a rendered part in the background. Pixels are copied, so the bitmap can be reused right away
+     */
+    void write(String name, Bitmap bitmap) {
+        final File file = new File(directory, name);
+        synchronized (lock) {
+            if (pendingWrites >= MAX_PENDING_WRITES || entries.containsKey(file.getPath())) {
+                return;
+            }
+            pendingWrites++;
+        }
+
+        final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.flip();
+
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store(file, pixels);
+                } finally {
+                    synchronized (lock) {
+                        pendingWrites--;
+                    }
+                }
+            }
+        });
+    }
+
+    private void store(File file, ByteBuffer pixels) {
+        File tmp = new File(directory, file.getName() + TMP_SUFFIX);
+        FileOutputStream outputStream = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            outputStream = new FileOutputStream(tmp);
+            FileChannel channel = outputStream.getChannel();
+            while (pixels.hasRemaining()) {
+                channel.write(pixels);
+            }
+            outputStream.close();
+            outputStream = null;
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write part " + file, e);
+            tmp.delete();
+            return;
+        } finally {
+            close(outputStream);
+        }
+
+        synchronized (lock) {
+            Long previous = entries.put(file.getPath(), file.length());
+            totalSize += file.length() - (previous != null ? previous : 0);
+            trimToSize(maxSize);
+        }
+    }
+
+    private static void remove(File file) {
+        synchronized (lock) {
+            Long size = entries.remove(file.getPath());
+            if (size != null) {
+                totalSize -= size;
+            }
+        }
+        file.delete();
+    }
+
+    /** Must be called with {@link #lock} held */
+    private static void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalSize -= eldest.getValue();
+            File file = new File(eldest.getKey());
+            file.delete();
+            File parent = file.getParentFile();
+            String[] left = parent.list();
+            if (left != null && left.length == 0) {
+                parent.delete();
+            }
+        }
+    }
+
+    /** Must be called with {@link #lock} held */
+    private static void loadEntries(File root) {
+        File[] documents = root.listFiles();
+        if (documents == null) {
+            return;
+        }
+        List<File> files = new ArrayList<>();
+        for (File document : documents) {
+            File[] parts = document.listFiles();
+            if (parts == null) {
+                continue;
+            }
+            for (File part : parts) {
+                if (part.getName().endsWith(TMP_SUFFIX)) {
+                    // left by an interrupted write
+                    part.delete();
+                } else {
+                    files.add(part);
+                }
+            }
+        }
+
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long modified1 = file1.lastModified();
+                long modified2 = file2.lastModified();
+                if (modified1 == modified2) {
+                    return 0;
+                }
+                return modified1 < modified2 ? -1 : 1;
+            }
+        });
+        for (File file : files) {
+            long length = file.length();
+            entries.put(file.getPath(), length);
+            totalSize += length;
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
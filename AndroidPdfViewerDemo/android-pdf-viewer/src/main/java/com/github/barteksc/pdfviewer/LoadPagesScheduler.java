@@ -0,0 +1,154 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+
+/**
+ * Coalesces requests to load pages, so at most one {@link PagesLoader} pass runs per frame, however many
+ * touch events and animation updates request it. Passes run from a {@link Choreographer} frame callback,
+ * on API versions without it from a message posted with a frame delay.
+ * <p>
+ * Used on the UI thread only.
+ */
+class LoadPagesScheduler implements Runnable {
+
+    private static final String TAG = LoadPagesScheduler.class.getSimpleName();
+
+    /** Delay of a pass without Choreographer, in milliseconds */
+    private static final long FRAME_DELAY = 16;
+
+    private final PDFView pdfView;
+
+    /** Frame callback, null before API 16 */
+    private final FrameCallback frameCallback;
+
+    /** True if a pass is requested and waits for the next frame */
+    private boolean dirty = false;
+
+    /** Requests since the last pass */
+    private int requests = 0;
+
+    private int totalRequests = 0;
+
+    private int passes = 0;
+
+    /** Time of the first request merged into the next pass */
+    private long firstRequestTime;
+
+    /** Time from the first request to its pass, summed over all passes, in milliseconds */
+    private long totalDelay = 0;
+
+    private long maxDelay = 0;
+
+    LoadPagesScheduler(PDFView pdfView) {
+        this.pdfView = pdfView;
+        this.frameCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameCallback() : null;
+    }
+
+    /** Request a pass at the next frame, requests until then are merged into it */
+    void request() {
+        requests++;
+        totalRequests++;
+        if (dirty) {
+            return;
+        }
+        dirty = true;
+        firstRequestTime = SystemClock.uptimeMillis();
+        if (frameCallback != null) {
+            frameCallback.post();
+        } else {
+            pdfView.postDelayed(this, FRAME_DELAY);
+        }
+    }
+
+    /** Drop a requested pass which did not run yet */
+    void cancel() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        requests = 0;
+        if (frameCallback != null) {
+            frameCallback.remove();
+        } else {
+            pdfView.removeCallbacks(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        onFrame();
+    }
+
+    private void onFrame() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        passes++;
+        long delay = SystemClock.uptimeMillis() - firstRequestTime;
+        totalDelay += delay;
+        maxDelay = Math.max(maxDelay, delay);
+        if (Constants.DEBUG_MODE) {
+            Log.d(TAG, "Loader pass " + passes + " merged " + requests + " requests, " + delay
+                    + " ms after the first one (" + getAverageDelay() + " ms on average, " + maxDelay + " ms at most)");
+        }
+        requests = 0;
+        pdfView.loadPagesNow();
+    }
+
+    /**
+     * Average time from the first request merged into a pass to the pass, in milliseconds.
+     * About a frame when the UI thread keeps up, longer when frames are skipped
+     */
+    float getAverageDelay() {
+        return passes > 0 ? (float) totalDelay / passes : 0;
+    }
+
+    /** Longest time from the first request merged into a pass to the pass, in milliseconds */
+    long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /** Average number of requests merged into a single loader pass */
+    float getRequestsPerPass() {
+        return passes > 0 ? (float) totalRequests / passes : 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameCallback implements Choreographer.FrameCallback {
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            onFrame();
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+}
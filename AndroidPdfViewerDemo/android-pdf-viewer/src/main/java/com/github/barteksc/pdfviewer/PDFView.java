@@ -30,7 +30,7 @@ import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.widget.RelativeLayout;
@@ -42,6 +42,7 @@ import com.github.barteksc.pdfviewer.listener.Callbacks;
 import com.github.barteksc.pdfviewer.listener.OnDrawListener;
 import com.github.barteksc.pdfviewer.listener.OnErrorListener;
 import com.github.barteksc.pdfviewer.listener.OnLoadCompleteListener;
+import com.github.barteksc.pdfviewer.listener.OnLoadProgressListener;
 import com.github.barteksc.pdfviewer.listener.OnLongPressListener;
 import com.github.barteksc.pdfviewer.listener.OnPageChangeListener;
 import com.github.barteksc.pdfviewer.listener.OnPageErrorListener;
@@ -54,6 +55,7 @@ import com.github.barteksc.pdfviewer.source.AssetSource;
 import com.github.barteksc.pdfviewer.source.ByteArraySource;
 import com.github.barteksc.pdfviewer.source.DocumentSource;
 import com.github.barteksc.pdfviewer.source.FileSource;
+import com.github.barteksc.pdfviewer.source.HttpSource;
 import com.github.barteksc.pdfviewer.source.InputStreamSource;
 import com.github.barteksc.pdfviewer.source.UriSource;
 import com.github.barteksc.pdfviewer.util.Constants;
@@ -68,7 +70,8 @@ import com.shockwave.pdfium.util.SizeF;
 
 import java.io.File;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -113,11 +116,30 @@ public class PDFView extends RelativeLayout {
 
     private ScrollDir scrollDir = ScrollDir.NONE;
 
+    ScrollDir getScrollDir() {
+        return scrollDir;
+    }
+
     /** Rendered parts go to the cache manager */
     CacheManager cacheManager;
 
+    /** Bitmaps of evicted parts, reused for rendering new ones */
+    BitmapPool bitmapPool;
+
+    /** Rendered parts of the current document stored on disk, null if disabled or the document cannot be identified */
+    DiskTileCache diskTileCache;
+
+    /** True if rendered parts should be stored on disk for documents opened again */
+    private boolean diskCacheEnabled = false;
+
+    /** Merges requests to load pages into at most one pass per frame */
+    private LoadPagesScheduler loadPagesScheduler;
+
+    /** Delivers parts from rendering threads in one batch per frame */
+    RenderedPartsQueue renderedPartsQueue;
+
     /** Animation manager manage all offset and zoom animation */
-    private AnimationManager animationManager;
+    AnimationManager animationManager;
 
     /** Drag manager manage all touch events */
     private DragPinchManager dragPinchManager;
@@ -153,10 +175,32 @@ public class PDFView extends RelativeLayout {
     /** Async task used during the loading phase to decode a PDF document */
     private DecodingAsyncTask decodingAsyncTask;
 
-    /** The thread {@link #renderingHandler} will run on */
-    private final HandlerThread renderingHandlerThread;
-    /** Handler always waiting in the background and rendering tasks */
-    RenderingHandler renderingHandler;
+    /** Reads page sizes estimated in lazy mode, null if all sizes are known */
+    private PageSizesAsyncTask pageSizesAsyncTask;
+
+    /** Read page sizes only around the default page before showing the document, see {@link PdfFile} */
+    private boolean lazyPageSizes = false;
+
+    /** Store original page sizes on disk and read them when the same document is opened again */
+    private boolean layoutCacheEnabled = false;
+
+    /** Render a low resolution preview of visible parts before the full parts */
+    private boolean progressiveRendering = false;
+
+    /** Time the document was loaded, from {@link SystemClock#uptimeMillis()} */
+    private long loadCompleteTime;
+
+    /** Time from loading the document to the first page part, that is the first legible frame, -1 until then */
+    private long timeToFirstPart = -1;
+
+    /** True if page sizes were read during a fling and layout has to be updated when it ends */
+    private boolean pageSizesOutdated = false;
+
+    /** Workers always waiting in the background and rendering tasks */
+    RenderingPool renderingPool;
+
+    /** Number of threads used by {@link #renderingPool} */
+    private int renderThreads = Constants.RENDER_THREADS;
 
     private PagesLoader pagesLoader;
 
@@ -229,8 +273,18 @@ public class PDFView extends RelativeLayout {
     /** Fling a single page at a time */
     private boolean pageFling = true;
 
-    /** Pages numbers used when calling onDrawAllListener */
-    private List<Integer> onDrawPagesNums = new ArrayList<>(10);
+    /** Pages numbers used when calling onDrawAllListener, the first {@link #onDrawPagesCount} are valid */
+    private int[] onDrawPagesNums = new int[10];
+
+    private int onDrawPagesCount = 0;
+
+    /** Scratch rectangles of {@link #drawPart(Canvas, PagePart)}, so drawing a frame doesn't allocate */
+    private final Rect drawSrcRect = new Rect();
+
+    private final RectF drawDstRect = new RectF();
+
+    /** Part of a page visible in the view, relative to the page size, used to skip hidden parts */
+    private final RectF visiblePageBounds = new RectF();
 
     /** Holds info whether view has been added to layout and has width and height */
     private boolean hasSize = false;
@@ -242,14 +296,15 @@ public class PDFView extends RelativeLayout {
     public PDFView(Context context, AttributeSet set) {
         super(context, set);
 
-        renderingHandlerThread = new HandlerThread("PDF renderer");
-
         if (isInEditMode()) {
             return;
         }
 
-        cacheManager = new CacheManager();
+        bitmapPool = new BitmapPool(Constants.Cache.BITMAP_POOL_SIZE);
+        cacheManager = new CacheManager(bitmapPool, CacheManager.getDefaultMaxSize(context));
         animationManager = new AnimationManager(this);
+        loadPagesScheduler = new LoadPagesScheduler(this);
+        renderedPartsQueue = new RenderedPartsQueue(this);
         dragPinchManager = new DragPinchManager(this, animationManager);
         pagesLoader = new PagesLoader(this);
 
@@ -413,18 +468,25 @@ public class PDFView extends RelativeLayout {
 
         animationManager.stopAll();
         dragPinchManager.disable();
+        loadPagesScheduler.cancel();
 
         // Stop tasks
-        if (renderingHandler != null) {
-            renderingHandler.stop();
-            renderingHandler.removeMessages(RenderingHandler.MSG_RENDER_TASK);
+        if (renderingPool != null) {
+            renderingPool.quit();
         }
+        renderedPartsQueue.clear();
         if (decodingAsyncTask != null) {
             decodingAsyncTask.cancel(true);
         }
+        if (pageSizesAsyncTask != null) {
+            pageSizesAsyncTask.cancel(true);
+            pageSizesAsyncTask = null;
+        }
+        pageSizesOutdated = false;
 
         // Clear caches
         cacheManager.recycle();
+        bitmapPool.clear();
 
         if (scrollHandle != null && isScrollHandleInit) {
             scrollHandle.destroyLayout();
@@ -435,7 +497,8 @@ public class PDFView extends RelativeLayout {
             pdfFile = null;
         }
 
-        renderingHandler = null;
+        renderingPool = null;
+        diskTileCache = null;
         scrollHandle = null;
         isScrollHandleInit = false;
         currentXOffset = currentYOffset = 0;
@@ -475,7 +538,7 @@ public class PDFView extends RelativeLayout {
             return;
         }
         animationManager.stopAll();
-        pdfFile.recalculatePageSizes(new Size(w, h));
+        recalculatePageSizes(new Size(w, h));
         if (swipeVertical) {
             moveTo(currentXOffset, -pdfFile.getPageOffset(currentPage, zoom));
         } else {
@@ -588,25 +651,42 @@ public class PDFView extends RelativeLayout {
         float currentYOffset = this.currentYOffset;
         canvas.translate(currentXOffset, currentYOffset);
 
-        // Draws thumbnails
-        for (PagePart part : cacheManager.getThumbnails()) {
-            drawPart(canvas, part);
-
-        }
-
-        // Draws parts
-        for (PagePart part : cacheManager.getPageParts()) {
-            drawPart(canvas, part);
-            if (callbacks.getOnDrawAll() != null
-                    && !onDrawPagesNums.contains(part.getPage())) {
-                onDrawPagesNums.add(part.getPage());
+        // Draws thumbnails, lists are iterated by index to avoid allocating iterators
+        List<PagePart> thumbnails = cacheManager.getThumbnails();
+        for (int i = 0, size = thumbnails.size(); i < size; i++) {
+            drawPart(canvas, thumbnails.get(i));
+        }
+
+        // Draws parts of visible pages only, so a frame costs what is visible, not what is cached.
+        // Boundaries between pages are in the middle of spacing, so neighbour pages are checked as well
+        OnDrawListener onDrawAllListener = callbacks.getOnDrawAll();
+        float viewStart = swipeVertical ? -currentYOffset : -currentXOffset;
+        float viewEnd = viewStart + (swipeVertical ? getHeight() : getWidth());
+        int firstPage = Math.max(pdfFile.getPageAtOffset(viewStart, zoom) - 1, 0);
+        int lastPage = Math.min(pdfFile.getPageAtOffset(viewEnd, zoom) + 1, pdfFile.getPagesCount() - 1);
+        for (int page = firstPage; page <= lastPage; page++) {
+            List<PagePart> parts = cacheManager.getPageParts(page);
+            if (parts == null) {
+                continue;
+            }
+            getVisiblePageBounds(page, visiblePageBounds);
+            boolean drawn = false;
+            for (int i = 0, size = parts.size(); i < size; i++) {
+                PagePart part = parts.get(i);
+                if (RectF.intersects(visiblePageBounds, part.getPageRelativeBounds())) {
+                    drawPart(canvas, part);
+                    drawn = true;
+                }
+            }
+            if (drawn && onDrawAllListener != null) {
+                addOnDrawPage(page);
             }
         }
 
-        for (Integer page : onDrawPagesNums) {
-            drawWithListener(canvas, page, callbacks.getOnDrawAll());
+        for (int i = 0; i < onDrawPagesCount; i++) {
+            drawWithListener(canvas, onDrawPagesNums[i], onDrawAllListener);
         }
-        onDrawPagesNums.clear();
+        onDrawPagesCount = 0;
 
         drawWithListener(canvas, currentPage, callbacks.getOnDraw());
 
@@ -614,6 +694,30 @@ public class PDFView extends RelativeLayout {
         canvas.translate(-currentXOffset, -currentYOffset);
     }
 
+    /** Store part of the page visible in the view, relative to the page size */
+    private void getVisiblePageBounds(int page, RectF out) {
+        float pageWidth = toCurrentScale(pdfFile.getPageWidth(page));
+        float pageHeight = toCurrentScale(pdfFile.getPageHeight(page));
+        float left = currentXOffset + (swipeVertical
+                ? pdfFile.getSecondaryPageOffset(page, zoom) : pdfFile.getPageOffset(page, zoom));
+        float top = currentYOffset + (swipeVertical
+                ? pdfFile.getPageOffset(page, zoom) : pdfFile.getSecondaryPageOffset(page, zoom));
+        out.set(-left / pageWidth, -top / pageHeight,
+                (getWidth() - left) / pageWidth, (getHeight() - top) / pageHeight);
+    }
+
+    private void addOnDrawPage(int page) {
+        for (int i = 0; i < onDrawPagesCount; i++) {
+            if (onDrawPagesNums[i] == page) {
+                return;
+            }
+        }
+        if (onDrawPagesCount == onDrawPagesNums.length) {
+            onDrawPagesNums = Arrays.copyOf(onDrawPagesNums, onDrawPagesCount * 2);
+        }
+        onDrawPagesNums[onDrawPagesCount++] = page;
+    }
+
     private void drawWithListener(Canvas canvas, int page, OnDrawListener listener) {
         if (listener != null) {
             float translateX, translateY;
@@ -626,10 +730,9 @@ public class PDFView extends RelativeLayout {
             }
 
             canvas.translate(translateX, translateY);
-            SizeF size = pdfFile.getPageSize(page);
             listener.onLayerDrawn(canvas,
-                    toCurrentScale(size.getWidth()),
-                    toCurrentScale(size.getHeight()),
+                    toCurrentScale(pdfFile.getPageWidth(page)),
+                    toCurrentScale(pdfFile.getPageHeight(page)),
                     page);
 
             canvas.translate(-translateX, -translateY);
@@ -649,31 +752,33 @@ public class PDFView extends RelativeLayout {
         // Move to the target page
         float localTranslationX = 0;
         float localTranslationY = 0;
-        SizeF size = pdfFile.getPageSize(part.getPage());
+        float pageWidth = pdfFile.getPageWidth(part.getPage());
+        float pageHeight = pdfFile.getPageHeight(part.getPage());
 
         if (swipeVertical) {
             localTranslationY = pdfFile.getPageOffset(part.getPage(), zoom);
             float maxWidth = pdfFile.getMaxPageWidth();
-            localTranslationX = toCurrentScale(maxWidth - size.getWidth()) / 2;
+            localTranslationX = toCurrentScale(maxWidth - pageWidth) / 2;
         } else {
             localTranslationX = pdfFile.getPageOffset(part.getPage(), zoom);
             float maxHeight = pdfFile.getMaxPageHeight();
-            localTranslationY = toCurrentScale(maxHeight - size.getHeight()) / 2;
+            localTranslationY = toCurrentScale(maxHeight - pageHeight) / 2;
         }
         canvas.translate(localTranslationX, localTranslationY);
 
-        Rect srcRect = new Rect(0, 0, renderedBitmap.getWidth(),
-                renderedBitmap.getHeight());
+        Rect srcRect = drawSrcRect;
+        srcRect.set(0, 0, renderedBitmap.getWidth(), renderedBitmap.getHeight());
 
-        float offsetX = toCurrentScale(pageRelativeBounds.left * size.getWidth());
-        float offsetY = toCurrentScale(pageRelativeBounds.top * size.getHeight());
-        float width = toCurrentScale(pageRelativeBounds.width() * size.getWidth());
-        float height = toCurrentScale(pageRelativeBounds.height() * size.getHeight());
+        float offsetX = toCurrentScale(pageRelativeBounds.left * pageWidth);
+        float offsetY = toCurrentScale(pageRelativeBounds.top * pageHeight);
+        float width = toCurrentScale(pageRelativeBounds.width() * pageWidth);
+        float height = toCurrentScale(pageRelativeBounds.height() * pageHeight);
 
         // If we use float values for this rectangle, there will be
         // a possible gap between page parts, especially when
         // the zoom level is high.
-        RectF dstRect = new RectF((int) offsetX, (int) offsetY,
+        RectF dstRect = drawDstRect;
+        dstRect.set((int) offsetX, (int) offsetY,
                 (int) (offsetX + width),
                 (int) (offsetY + height));
 
@@ -701,32 +806,53 @@ public class PDFView extends RelativeLayout {
     /**
      * Load all the parts around the center of the screen,
      * taking into account X and Y offsets, zoom level, and
-     * the current page displayed
+     * the current page displayed.
+     * Parts are loaded at the next frame, all calls until then result in a single pass
      */
     public void loadPages() {
-        if (pdfFile == null || renderingHandler == null) {
+        if (pdfFile == null || renderingPool == null) {
             return;
         }
+        loadPagesScheduler.request();
+    }
 
-        // Cancel all current tasks
-        renderingHandler.removeMessages(RenderingHandler.MSG_RENDER_TASK);
+    /** Run a loader pass, called by {@link LoadPagesScheduler} at most once per frame */
+    void loadPagesNow() {
+        if (pdfFile == null || renderingPool == null) {
+            return;
+        }
+
+        if (pageSizesOutdated && !animationManager.isFlinging()) {
+            // updates layout and loads pages again
+            updatePageSizes();
+            return;
+        }
+
+        // Keep tasks still needed by this pass, cancel the others
+        renderingPool.beginPass();
         cacheManager.makeANewSet();
 
         pagesLoader.loadPages();
+        renderingPool.endPass();
         redraw();
     }
 
     /** Called when the PDF is loaded */
-    void loadComplete(PdfFile pdfFile) {
+    void loadComplete(PdfFile pdfFile, DiskTileCache diskTileCache) {
         state = State.LOADED;
+        loadCompleteTime = SystemClock.uptimeMillis();
+        timeToFirstPart = -1;
 
         this.pdfFile = pdfFile;
+        this.diskTileCache = diskTileCache;
+
+        renderingPool = new RenderingPool(this, renderThreads);
+        renderingPool.start();
 
-        if (!renderingHandlerThread.isAlive()) {
-            renderingHandlerThread.start();
+        if (pdfFile.hasEstimatedPageSizes()) {
+            pageSizesAsyncTask = new PageSizesAsyncTask(this, pdfFile, defaultPage);
+            pageSizesAsyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         }
-        renderingHandler = new RenderingHandler(renderingHandlerThread.getLooper(), this);
-        renderingHandler.start();
 
         if (scrollHandle != null) {
             scrollHandle.setupLayout(this);
@@ -740,6 +866,59 @@ public class PDFView extends RelativeLayout {
         jumpTo(defaultPage, false);
     }
 
+    /** Called when sizes of pages estimated in lazy mode were read */
+    void onPageSizesLoaded() {
+        if (pdfFile == null) {
+            return;
+        }
+        if (animationManager.isFlinging()) {
+            // updating layout now would fight with the fling, it is done in loadPages() when it ends
+            pageSizesOutdated = true;
+            return;
+        }
+        updatePageSizes();
+    }
+
+    /**
+     * Recalculate layout with page sizes read so far, keeping the same point of the page
+     * at the start of the view, so estimated sizes of pages before it don't move the content
+     */
+    private void updatePageSizes() {
+        pageSizesOutdated = false;
+        float offset = swipeVertical ? -currentYOffset : -currentXOffset;
+        int page = pdfFile.getPageAtOffset(offset, zoom);
+        float pageLength = pdfFile.getPageLength(page, zoom);
+        float positionInPage = pageLength > 0 ? (offset - pdfFile.getPageOffset(page, zoom)) / pageLength : 0;
+
+        recalculatePageSizes(new Size(getWidth(), getHeight()));
+
+        offset = pdfFile.getPageOffset(page, zoom) + positionInPage * pdfFile.getPageLength(page, zoom);
+        if (swipeVertical) {
+            moveTo(currentXOffset, -offset);
+        } else {
+            moveTo(-offset, currentYOffset);
+        }
+        loadPageByOffset();
+    }
+
+    /**
+     * Recalculate layout of the document. Parts of pages with changed size are dropped together with
+     * their tasks, as parts are identified by their cell in the grid of the page, which changes with its size
+     */
+    private void recalculatePageSizes(Size viewSize) {
+        boolean[] resizedPages = pdfFile.recalculatePageSizes(viewSize);
+        // parts already rendered with the old grid must be cached before they are dropped
+        renderedPartsQueue.flush();
+        if (renderingPool != null) {
+            renderingPool.cancelPages(resizedPages);
+        }
+        for (int page = 0; page < resizedPages.length; page++) {
+            if (resizedPages[page]) {
+                cacheManager.removePageParts(page);
+            }
+        }
+    }
+
     void loadError(Throwable t) {
         state = State.ERROR;
         // store reference, because callbacks will be cleared in recycle() method
@@ -764,6 +943,14 @@ public class PDFView extends RelativeLayout {
      * @param part The created PagePart.
      */
     public void onBitmapRendered(PagePart part) {
+        cacheRenderedPart(part);
+        redraw();
+    }
+
+    /**
+     * Cache a rendered part without redrawing, used by {@link RenderedPartsQueue} to redraw once per batch
+     */
+    void cacheRenderedPart(PagePart part) {
         // when it is first rendered part
         if (state == State.LOADED) {
             state = State.SHOWN;
@@ -773,9 +960,14 @@ public class PDFView extends RelativeLayout {
         if (part.isThumbnail()) {
             cacheManager.cacheThumbnail(part);
         } else {
+            if (timeToFirstPart < 0) {
+                timeToFirstPart = SystemClock.uptimeMillis() - loadCompleteTime;
+                if (Constants.DEBUG_MODE) {
+                    Log.d(TAG, "First " + (part.isPreview() ? "preview" : "part") + " after " + timeToFirstPart + " ms");
+                }
+            }
             cacheManager.cachePart(part);
         }
-        redraw();
     }
 
     public void moveTo(float offsetX, float offsetY) {
@@ -1180,6 +1372,67 @@ public class PDFView extends RelativeLayout {
         this.enableAntialiasing = enableAntialiasing;
     }
 
+    private void setRenderThreads(int renderThreads) {
+        this.renderThreads = renderThreads;
+    }
+
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    /**
+     * @param cacheSize budget of rendered bitmaps in bytes, 0 or less to derive it from available memory
+     */
+    private void setCacheSize(int cacheSize) {
+        cacheManager.setMaxSize(cacheSize > 0 ? cacheSize : CacheManager.getDefaultMaxSize(getContext()));
+    }
+
+    /** Budget of rendered bitmaps in bytes */
+    public int getCacheSize() {
+        return cacheManager.getMaxSize();
+    }
+
+    private void setLazyPageSizes(boolean lazyPageSizes) {
+        this.lazyPageSizes = lazyPageSizes;
+    }
+
+    public boolean isLazyPageSizes() {
+        return lazyPageSizes;
+    }
+
+    private void setLayoutCacheEnabled(boolean layoutCacheEnabled) {
+        this.layoutCacheEnabled = layoutCacheEnabled;
+    }
+
+    public boolean isLayoutCacheEnabled() {
+        return layoutCacheEnabled;
+    }
+
+    private void setProgressiveRendering(boolean progressiveRendering) {
+        this.progressiveRendering = progressiveRendering;
+    }
+
+    public boolean isProgressiveRendering() {
+        return progressiveRendering;
+    }
+
+    /** Milliseconds from loading the document to the first rendered page part, or -1 if none was rendered yet */
+    long getTimeToFirstPart() {
+        return timeToFirstPart;
+    }
+
+    int getDefaultPage() {
+        return defaultPage;
+    }
+
+    private void setDiskCacheEnabled(boolean diskCacheEnabled) {
+        this.diskCacheEnabled = diskCacheEnabled;
+    }
+
+    public boolean isDiskCacheEnabled() {
+        return diskCacheEnabled;
+    }
+
     public int getSpacingPx() {
         return spacingPx;
     }
@@ -1268,11 +1521,27 @@ public class PDFView extends RelativeLayout {
         return new Configurator(new ByteArraySource(bytes));
     }
 
-    /** Use stream as the pdf source. Stream will be written to bytearray, because native code does not support Java Streams */
+    /**
+     * Use stream as the pdf source. Native code does not support Java Streams, so the stream
+     * is spooled to a temporary file, see {@link InputStreamSource}
+     */
     public Configurator fromStream(InputStream stream) {
         return new Configurator(new InputStreamSource(stream));
     }
 
+    /**
+     * Use document on a HTTP server as the pdf source. It is downloaded with range requests
+     * to the cache directory, where it is kept for next loads, see {@link HttpSource}
+     */
+    public Configurator fromUrl(URL url) {
+        return new Configurator(new HttpSource(url));
+    }
+
+    /** Use stream of known length as the pdf source, small streams are read directly into memory */
+    public Configurator fromStream(InputStream stream, long length) {
+        return new Configurator(new InputStreamSource(stream, length));
+    }
+
     /** Use custom source as pdf source */
     public Configurator fromSource(DocumentSource docSource) {
         return new Configurator(docSource);
@@ -1296,6 +1565,8 @@ public class PDFView extends RelativeLayout {
 
         private OnLoadCompleteListener onLoadCompleteListener;
 
+        private OnLoadProgressListener onLoadProgressListener;
+
         private OnErrorListener onErrorListener;
 
         private OnPageChangeListener onPageChangeListener;
@@ -1336,6 +1607,18 @@ public class PDFView extends RelativeLayout {
 
         private boolean nightMode = false;
 
+        private int renderThreads = Constants.RENDER_THREADS;
+
+        private int cacheSize = 0;
+
+        private boolean diskCache = false;
+
+        private boolean lazyPageSizes = false;
+
+        private boolean layoutCache = false;
+
+        private boolean progressiveRendering = false;
+
         private Configurator(DocumentSource documentSource) {
             this.documentSource = documentSource;
         }
@@ -1375,6 +1658,12 @@ public class PDFView extends RelativeLayout {
             return this;
         }
 
+        /** Progress of reading the document, reported for stream sources */
+        public Configurator onLoadProgress(OnLoadProgressListener onLoadProgressListener) {
+            this.onLoadProgressListener = onLoadProgressListener;
+            return this;
+        }
+
         public Configurator onPageScroll(OnPageScrollListener onPageScrollListener) {
             this.onPageScrollListener = onPageScrollListener;
             return this;
@@ -1470,6 +1759,63 @@ public class PDFView extends RelativeLayout {
             return this;
         }
 
+        /**
+         * Number of threads rendering page parts in parallel, at least 1. Pdfium still rasterizes
+         * one part at a time, see {@link Constants#RENDER_THREADS}
+         */
+        public Configurator renderThreads(int renderThreads) {
+            this.renderThreads = renderThreads;
+            return this;
+        }
+
+        /**
+         * Memory used by rendered parts and thumbnails, in bytes. By default, or when 0,
+         * it is a {@link Constants.Cache#CACHE_MEMORY_RATIO} of memory available to the application
+         */
+        public Configurator cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Store rendered parts on disk, so they are not rendered again when the same document is opened.
+         * Works for sources implementing {@link com.github.barteksc.pdfviewer.source.FingerprintSource},
+         * limited by {@link Constants.Cache#DISK_CACHE_SIZE}
+         */
+        public Configurator diskCache(boolean diskCache) {
+            this.diskCache = diskCache;
+            return this;
+        }
+
+        /**
+         * Show the document as soon as pages around the default page are measured, assuming the
+         * other pages have the same size until their sizes are read in the background.
+         * Speeds up opening of documents with thousands of pages
+         */
+        public Configurator lazyPageSizes(boolean lazyPageSizes) {
+            this.lazyPageSizes = lazyPageSizes;
+            return this;
+        }
+
+        /**
+         * Store original page sizes on disk, so the same document opened again is laid out
+         * without measuring its pages. Works for sources implementing
+         * {@link com.github.barteksc.pdfviewer.source.FingerprintSource}
+         */
+        public Configurator layoutCache(boolean layoutCache) {
+            this.layoutCache = layoutCache;
+            return this;
+        }
+
+        /**
+         * Render visible parts at {@link Constants#PREVIEW_RATIO} first, and replace them with full parts
+         * afterwards, so text becomes legible sooner after opening, scrolling or zooming
+         */
+        public Configurator progressiveRendering(boolean progressiveRendering) {
+            this.progressiveRendering = progressiveRendering;
+            return this;
+        }
+
         public void load() {
             if (!hasSize) {
                 waitingDocumentConfigurator = this;
@@ -1477,6 +1823,7 @@ public class PDFView extends RelativeLayout {
             }
             PDFView.this.recycle();
             PDFView.this.callbacks.setOnLoadComplete(onLoadCompleteListener);
+            PDFView.this.callbacks.setOnLoadProgress(onLoadProgressListener);
             PDFView.this.callbacks.setOnError(onErrorListener);
             PDFView.this.callbacks.setOnDraw(onDrawListener);
             PDFView.this.callbacks.setOnDrawAll(onDrawAllListener);
@@ -1500,6 +1847,12 @@ public class PDFView extends RelativeLayout {
             PDFView.this.setPageFitPolicy(pageFitPolicy);
             PDFView.this.setPageSnap(pageSnap);
             PDFView.this.setPageFling(pageFling);
+            PDFView.this.setRenderThreads(renderThreads);
+            PDFView.this.setCacheSize(cacheSize);
+            PDFView.this.setDiskCacheEnabled(diskCache);
+            PDFView.this.setLazyPageSizes(lazyPageSizes);
+            PDFView.this.setLayoutCacheEnabled(layoutCache);
+            PDFView.this.setProgressiveRendering(progressiveRendering);
 
             if (pageNumbers != null) {
                 PDFView.this.load(documentSource, password, pageNumbers);
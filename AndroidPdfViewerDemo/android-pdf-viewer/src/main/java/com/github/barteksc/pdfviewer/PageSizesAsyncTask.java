@@ -0,0 +1,140 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.os.AsyncTask;
+
+import com.shockwave.pdfium.util.Size;
+
+/**
+ * Reads sizes of pages estimated by {@link PdfFile} in lazy mode. Pages after the initial page
+ * are read first, then the ones before it, and they are passed to {@link PDFView} in chunks.
+ */
+class PageSizesAsyncTask extends AsyncTask<Void, int[], Void> {
+
+    /**
+     * Pages passed to the view in the first chunk. Every chunk updates layout from its first page on,
+     * so later chunks are twice as large as the previous one, up to {@link #MAX_CHUNK_SIZE}, and pages
+     * near the initial one are laid out quickly while the whole document takes few updates
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    private static final int MAX_CHUNK_SIZE = 1024;
+
+    private final PDFView pdfView;
+
+    private final PdfFile pdfFile;
+
+    private final int initialPage;
+
+    /** Triples of page, width and height of the current chunk */
+    private int[] chunk = new int[CHUNK_SIZE * 3];
+
+    private int chunkLength = 0;
+
+    /** Stores all page sizes when they are read, null if the layout is not cached */
+    private final PageSizesCache pageSizesCache;
+
+    /** Original page sizes, filled as they are read */
+    private int[] widths;
+
+    private int[] heights;
+
+    PageSizesAsyncTask(PDFView pdfView, PdfFile pdfFile, int initialPage) {
+        this.pdfView = pdfView;
+        this.pdfFile = pdfFile;
+        this.initialPage = Math.max(0, Math.min(initialPage, pdfFile.getPagesCount() - 1));
+        this.pageSizesCache = pdfFile.getPageSizesCache();
+        if (pageSizesCache != null) {
+            widths = new int[pdfFile.getPagesCount()];
+            heights = new int[pdfFile.getPagesCount()];
+            pdfFile.copyOriginalPageSizes(widths, heights);
+        }
+    }
+
+    @Override
+    protected Void doInBackground(Void... params) {
+        int pagesCount = pdfFile.getPagesCount();
+        for (int page = initialPage; page < pagesCount; page++) {
+            if (!readPageSize(page)) {
+                return null;
+            }
+        }
+        for (int page = initialPage - 1; page >= 0; page--) {
+            if (!readPageSize(page)) {
+                return null;
+            }
+        }
+        publishChunk();
+        if (pageSizesCache != null) {
+            pageSizesCache.write(widths, heights);
+        }
+        return null;
+    }
+
+    /**
+     * @return false if loading was cancelled
+     */
+    private boolean readPageSize(int page) {
+        if (isCancelled()) {
+            return false;
+        }
+        if (!pdfFile.isPageSizeEstimated(page)) {
+            return true;
+        }
+        Size size = pdfFile.readOriginalPageSize(page);
+        if (size == null) {
+            return false;
+        }
+        chunk[chunkLength++] = page;
+        chunk[chunkLength++] = size.getWidth();
+        chunk[chunkLength++] = size.getHeight();
+        if (widths != null) {
+            widths[page] = size.getWidth();
+            heights[page] = size.getHeight();
+        }
+        if (chunkLength == chunk.length) {
+            publishChunk();
+        }
+        return true;
+    }
+
+    private void publishChunk() {
+        if (chunkLength > 0) {
+            int[] published = chunk;
+            if (chunkLength < published.length) {
+                published = new int[chunkLength];
+                System.arraycopy(chunk, 0, published, 0, chunkLength);
+            }
+            publishProgress(published);
+            chunk = new int[Math.min(chunk.length * 2, MAX_CHUNK_SIZE * 3)];
+            chunkLength = 0;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(int[]... chunks) {
+        if (isCancelled()) {
+            return;
+        }
+        for (int[] sizes : chunks) {
+            for (int i = 0; i < sizes.length; i += 3) {
+                pdfFile.setOriginalPageSize(sizes[i], new Size(sizes[i + 1], sizes[i + 2]));
+            }
+        }
+        pdfView.onPageSizesLoaded();
+    }
+}
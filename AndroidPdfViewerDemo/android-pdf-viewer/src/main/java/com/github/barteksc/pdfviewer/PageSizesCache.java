@@ -0,0 +1,159 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.Util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Original page sizes of a document stored in a small binary file under the application cache
+ * directory, so a document opened again can be laid out without asking Pdfium for every page.
+ * <p>
+ * The file holds a magic number, format version, pages count and then width and height
+ * of every page, all as 32 bit integers. Page sizes depend only on the document, so the file
+ * is named after the document fingerprint and stays valid for every fit policy and view size.
+ */
+class PageSizesCache {
+
+    private static final String TAG = PageSizesCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "pdfview-layout";
+
+    private static final int MAGIC = 0x50565a53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 3 * 4;
+
+    private final File file;
+
+    /**
+     * @param fingerprint identity of the document, see {@link com.github.barteksc.pdfviewer.source.FingerprintSource}
+     */
+    PageSizesCache(Context context, String fingerprint) {
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        file = new File(directory, Util.md5(fingerprint));
+    }
+
+    /**
+     * Read stored page sizes into the given arrays, which have one element per page
+     *
+     * @return false if sizes of the document are not stored
+     */
+    boolean read(int[] widths, int[] heights) {
+        if (!file.isFile()) {
+            return false;
+        }
+        int pagesCount = widths.length;
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            FileChannel channel = inputStream.getChannel();
+            int size = HEADER_SIZE + pagesCount * 2 * 4;
+            // stored count is checked against the document below, a file of other length is torn or foreign
+            if (channel.size() != size) {
+                return false;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full
+            }
+            buffer.flip();
+            if (buffer.remaining() != size || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != pagesCount) {
+                return false;
+            }
+            for (int i = 0; i < pagesCount; i++) {
+                widths[i] = buffer.getInt();
+                heights[i] = buffer.getInt();
+                if (widths[i] <= 0 || heights[i] <= 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read page sizes from " + file, e);
+            return false;
+        } finally {
+            close(inputStream);
+        }
+    }
+
+    /**
+     * Store page sizes, failures are only logged as the cache is optional
+     */
+    void write(int[] widths, int[] heights) {
+        int pagesCount = widths.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pagesCount * 2 * 4);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(pagesCount);
+        for (int i = 0; i < pagesCount; i++) {
+            buffer.putInt(widths[i]);
+            buffer.putInt(heights[i]);
+        }
+        buffer.flip();
+
+        File tmp = null;
+        FileOutputStream outputStream = null;
+        try {
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            // every call has its own temporary file, as several views may store sizes of the same document at once
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            outputStream = new FileOutputStream(tmp);
+            FileChannel channel = outputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            outputStream.close();
+            outputStream = null;
+            if (tmp.renameTo(file)) {
+                tmp = null;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write page sizes to " + file, e);
+        } finally {
+            close(outputStream);
+            if (tmp != null) {
+                // left only if writing or renaming failed
+                tmp.delete();
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -15,18 +15,21 @@
  */
 package com.github.barteksc.pdfviewer;
 
+import android.graphics.PointF;
 import android.graphics.RectF;
 
 import com.github.barteksc.pdfviewer.util.Constants;
 import com.github.barteksc.pdfviewer.util.MathUtils;
+import com.github.barteksc.pdfviewer.util.TileKey;
 import com.github.barteksc.pdfviewer.util.Util;
-import com.shockwave.pdfium.util.SizeF;
 
-import static com.github.barteksc.pdfviewer.util.Constants.Cache.CACHE_SIZE;
 import static com.github.barteksc.pdfviewer.util.Constants.PRELOAD_OFFSET;
 
 class PagesLoader {
 
+    /** Parts left behind by the current scroll direction are needed later, so they count as more distant */
+    private static final float BEHIND_SCROLL_FACTOR = 2f;
+
     private PDFView pdfView;
     private int cacheOrder;
     private float xOffset;
@@ -35,6 +38,11 @@ class PagesLoader {
     private float pageRelativePartHeight;
     private float partRenderWidth;
     private float partRenderHeight;
+    /** Zoom level of parts loaded in the current pass, see {@link TileKey#getLevel(float)} */
+    private int level;
+    private float levelZoom;
+    /** Coarsest level with parts as sharp as a preview of the current level */
+    private int previewLevel;
     private final RectF thumbnailRect = new RectF(0, 0, 1, 1);
     private final int preloadOffset;
     private final Holder firstHolder = new Holder();
@@ -42,6 +50,19 @@ class PagesLoader {
     private final GridSize firstGrid = new GridSize();
     private final GridSize lastGrid = new GridSize();
     private final GridSize middleGrid = new GridSize();
+    private final RectF pageDocumentBounds = new RectF();
+    private final RectF partDocumentBounds = new RectF();
+    private final RectF pageRelativeBounds = new RectF();
+    private PDFView.ScrollDir scrollDir;
+    private float viewLeft;
+    private float viewTop;
+    private float viewRight;
+    private float viewBottom;
+    private boolean partVisible;
+    /** Offset of the view where the running fling will stop */
+    private final PointF flingTarget = new PointF();
+    /** True while parts are loaded for the fling target instead of the current view */
+    private boolean prefetching;
 
     private class Holder {
         int page;
@@ -60,11 +81,10 @@ class PagesLoader {
     }
 
     private void getPageColsRows(GridSize grid, int pageIndex) {
-        SizeF size = pdfView.pdfFile.getPageSize(pageIndex);
-        float ratioX = 1f / size.getWidth();
-        float ratioY = 1f / size.getHeight();
-        final float partHeight = (Constants.PART_SIZE * ratioY) / pdfView.getZoom();
-        final float partWidth = (Constants.PART_SIZE * ratioX) / pdfView.getZoom();
+        float ratioX = 1f / pdfView.pdfFile.getPageWidth(pageIndex);
+        float ratioY = 1f / pdfView.pdfFile.getPageHeight(pageIndex);
+        final float partHeight = (Constants.PART_SIZE * ratioY) / levelZoom;
+        final float partWidth = (Constants.PART_SIZE * ratioX) / levelZoom;
         grid.rows = MathUtils.ceil(1f / partHeight);
         grid.cols = MathUtils.ceil(1f / partWidth);
     }
@@ -76,9 +96,8 @@ class PagesLoader {
         float offset = pdfView.isSwipeVertical() ? fixedYOffset : fixedXOffset;
         holder.page = pdfView.pdfFile.getPageAtOffset(offset, pdfView.getZoom());
         getPageColsRows(grid, holder.page);
-        SizeF scaledPageSize = pdfView.pdfFile.getScaledPageSize(holder.page, pdfView.getZoom());
-        float rowHeight = scaledPageSize.getHeight() / grid.rows;
-        float colWidth = scaledPageSize.getWidth() / grid.cols;
+        float rowHeight = pdfView.pdfFile.getPageHeight(holder.page) * pdfView.getZoom() / grid.rows;
+        float colWidth = pdfView.pdfFile.getPageWidth(holder.page) * pdfView.getZoom() / grid.cols;
         float row, col;
         float secondaryOffset = pdfView.pdfFile.getSecondaryPageOffset(holder.page, pdfView.getZoom());
         if (pdfView.isSwipeVertical()) {
@@ -106,8 +125,14 @@ class PagesLoader {
         partRenderHeight = Constants.PART_SIZE / pageRelativePartHeight;
     }
 
-    private void loadVisible() {
+    /**
+     * @param loadParts false to load only thumbnails of visible pages
+     */
+    private void loadVisible(boolean loadParts) {
         int parts = 0;
+        int bytesPerPixel = pdfView.isBestQuality() ? 4 : 2;
+        int maxParts = pdfView.cacheManager.getPartsCapacity(
+                Math.round(Constants.PART_SIZE * Constants.PART_SIZE) * bytesPerPixel);
         float scaledPreloadOffset = preloadOffset * pdfView.getZoom();
         float firstXOffset = -xOffset + scaledPreloadOffset;
         float lastXOffset = -xOffset - pdfView.getWidth() - scaledPreloadOffset;
@@ -120,19 +145,22 @@ class PagesLoader {
         for (int i = firstHolder.page; i <= lastHolder.page; i++) {
             loadThumbnail(i);
         }
+        if (!loadParts) {
+            return;
+        }
 
         int pagesCount = lastHolder.page - firstHolder.page + 1;
-        for (int page = firstHolder.page; page <= lastHolder.page && parts < CACHE_SIZE; page++) {
+        for (int page = firstHolder.page; page <= lastHolder.page && parts < maxParts; page++) {
 
             if (page == firstHolder.page && pagesCount > 1) {
-                parts += loadPageEnd(firstHolder, firstGrid, CACHE_SIZE - parts);
+                parts += loadPageEnd(firstHolder, firstGrid, maxParts - parts);
             } else if (page == lastHolder.page && pagesCount > 1) {
-                parts += loadPageStart(lastHolder, lastGrid, CACHE_SIZE - parts);
+                parts += loadPageStart(lastHolder, lastGrid, maxParts - parts);
             } else if(pagesCount == 1) {
-                parts += loadPageCenter(firstHolder, lastHolder, firstGrid, CACHE_SIZE - parts);
+                parts += loadPageCenter(firstHolder, lastHolder, firstGrid, maxParts - parts);
             } else {
                 getPageColsRows(middleGrid, page);
-                parts += loadWholePage(page, middleGrid, CACHE_SIZE - parts);
+                parts += loadWholePage(page, middleGrid, maxParts - parts);
             }
         }
 
@@ -224,13 +252,20 @@ class PagesLoader {
         }
         renderWidth *= relWidth;
         renderHeight *= relHeight;
-        RectF pageRelativeBounds = new RectF(relX, relY, relX + relWidth, relY + relHeight);
+        pageRelativeBounds.set(relX, relY, relX + relWidth, relY + relHeight);
 
         if (renderWidth > 0 && renderHeight > 0) {
-            if (!pdfView.cacheManager.upPartIfContained(page, pageRelativeBounds, cacheOrder)) {
-                pdfView.renderingHandler.addRenderingTask(page, renderWidth, renderHeight,
+            long key = TileKey.part(page, level, row, col);
+            if (!pdfView.cacheManager.upPartIfContained(key, cacheOrder)) {
+                float priority = calculatePriority(page, pageRelativeBounds);
+                // a preview shows a visible part sooner, unless its preview is cached already
+                // or full parts of a coarser level show the cell at least as sharp as a preview would
+                boolean preview = pdfView.isProgressiveRendering() && partVisible
+                        && !pdfView.cacheManager.containsPart(key)
+                        && !pdfView.cacheManager.isCoveredByFullParts(page, previewLevel, level, pageRelativeBounds);
+                pdfView.renderingPool.addRenderingTask(key, page, renderWidth, renderHeight,
                         pageRelativeBounds, false, cacheOrder, pdfView.isBestQuality(),
-                        pdfView.isAnnotationRendering());
+                        pdfView.isAnnotationRendering(), partVisible, priority, preview);
             }
 
             cacheOrder++;
@@ -240,21 +275,88 @@ class PagesLoader {
     }
 
     private void loadThumbnail(int page) {
-        SizeF pageSize = pdfView.pdfFile.getPageSize(page);
-        float thumbnailWidth = pageSize.getWidth() * Constants.THUMBNAIL_RATIO;
-        float thumbnailHeight = pageSize.getHeight() * Constants.THUMBNAIL_RATIO;
-        if (!pdfView.cacheManager.containsThumbnail(page, thumbnailRect)) {
-            pdfView.renderingHandler.addRenderingTask(page,
+        float thumbnailWidth = pdfView.pdfFile.getPageWidth(page) * Constants.THUMBNAIL_RATIO;
+        float thumbnailHeight = pdfView.pdfFile.getPageHeight(page) * Constants.THUMBNAIL_RATIO;
+        long key = TileKey.thumbnail(page);
+        if (!pdfView.cacheManager.containsThumbnail(key)) {
+            float priority = calculatePriority(page, thumbnailRect);
+            pdfView.renderingPool.addRenderingTask(key, page,
                     thumbnailWidth, thumbnailHeight, thumbnailRect,
-                    true, 0, pdfView.isBestQuality(), pdfView.isAnnotationRendering());
+                    true, 0, pdfView.isBestQuality(), pdfView.isAnnotationRendering(),
+                    partVisible, priority, false);
+        }
+    }
+
+    /**
+     * Calculate distance between center of the part and center of the view, in document coordinates.
+     * Parts behind current scroll direction are treated as more distant.
+     * Sets {@link #partVisible} to true if the part intersects the view.
+     *
+     * @return rendering priority, lower value is rendered sooner
+     */
+    private float calculatePriority(int pageIndex, RectF pageRelativeBounds) {
+        RectF page = pdfView.pdfFile.getPageBounds(pageIndex, pdfView.getZoom(), pageDocumentBounds);
+        float pageWidth = page.width();
+        float pageHeight = page.height();
+        partDocumentBounds.set(page.left + pageRelativeBounds.left * pageWidth,
+                page.top + pageRelativeBounds.top * pageHeight,
+                page.left + pageRelativeBounds.right * pageWidth,
+                page.top + pageRelativeBounds.bottom * pageHeight);
+        // parts prefetched for the fling target are not on screen yet, so they wait for visible ones
+        partVisible = !prefetching && partDocumentBounds.intersects(viewLeft, viewTop, viewRight, viewBottom);
+
+        float dx = partDocumentBounds.centerX() - (viewLeft + viewRight) / 2;
+        float dy = partDocumentBounds.centerY() - (viewTop + viewBottom) / 2;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        float primaryDelta = pdfView.isSwipeVertical() ? dy : dx;
+        if ((scrollDir == PDFView.ScrollDir.END && primaryDelta < 0)
+                || (scrollDir == PDFView.ScrollDir.START && primaryDelta > 0)) {
+            distance *= BEHIND_SCROLL_FACTOR;
         }
+        return distance;
     }
 
     void loadPages() {
         cacheOrder = 1;
-        xOffset = -MathUtils.max(pdfView.getCurrentXOffset(), 0);
-        yOffset = -MathUtils.max(pdfView.getCurrentYOffset(), 0);
+        scrollDir = pdfView.getScrollDir();
+        level = TileKey.getLevel(pdfView.getZoom());
+        levelZoom = TileKey.getLevelZoom(level);
+        previewLevel = TileKey.getLevel(levelZoom * Constants.PREVIEW_RATIO);
+        setView(pdfView.getCurrentXOffset(), pdfView.getCurrentYOffset());
+
+        if (isFlingLandingElsewhere()) {
+            // Content under the view only passes by, thumbnails keep it covered. Parts are rendered
+            // ahead where the fling will stop, tasks of passed pages are cancelled by the next pass
+            loadVisible(false);
+            prefetching = true;
+            setView(flingTarget.x, flingTarget.y);
+            loadVisible(true);
+            prefetching = false;
+        } else {
+            loadVisible(true);
+        }
+    }
+
+    /**
+     * @return true if a fling is running and the view at its final offset doesn't overlap the current view
+     */
+    private boolean isFlingLandingElsewhere() {
+        if (!pdfView.animationManager.getFlingFinalOffset(flingTarget)) {
+            return false;
+        }
+        if (pdfView.isSwipeVertical()) {
+            return Math.abs(flingTarget.y - pdfView.getCurrentYOffset()) > pdfView.getHeight();
+        }
+        return Math.abs(flingTarget.x - pdfView.getCurrentXOffset()) > pdfView.getWidth();
+    }
 
-        loadVisible();
+    /** Set the view which is loaded, given by offsets as in {@link PDFView#getCurrentXOffset()} */
+    private void setView(float currentXOffset, float currentYOffset) {
+        xOffset = -MathUtils.max(currentXOffset, 0);
+        yOffset = -MathUtils.max(currentYOffset, 0);
+        viewLeft = -currentXOffset;
+        viewTop = -currentYOffset;
+        viewRight = viewLeft + pdfView.getWidth();
+        viewBottom = viewTop + pdfView.getHeight();
     }
 }
@@ -18,9 +18,12 @@ package com.github.barteksc.pdfviewer;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.util.Log;
 import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
 
 import com.github.barteksc.pdfviewer.exception.PageRenderingException;
+import com.github.barteksc.pdfviewer.util.Constants;
 import com.github.barteksc.pdfviewer.util.FitPolicy;
 import com.github.barteksc.pdfviewer.util.PageSizeCalculator;
 import com.shockwave.pdfium.PdfDocument;
@@ -28,21 +31,91 @@ import com.shockwave.pdfium.PdfiumCore;
 import com.shockwave.pdfium.util.Size;
 import com.shockwave.pdfium.util.SizeF;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PdfFile {
 
-    private static final Object lock = new Object();
+    private static final String TAG = PdfFile.class.getSimpleName();
+
+    /** Number of pages around the initial page with sizes read before the document is shown, in lazy mode */
+    private static final int LAZY_INITIAL_PAGES = 16;
+
+    /** Rough size of native structures of an opened page, Pdfium doesn't report it */
+    private static final long OPEN_PAGE_MEMORY = 64 * 1024;
+
+    /**
+     * Guards page handles and the document of this file only, so views showing different documents
+     * don't wait for each other. Pdfium itself is not thread safe, {@link PdfiumCore} serialises all native
+     * calls with its own global lock, which is always taken after this one. Page sizes, offsets and stats
+     * are read without locking.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Pdfium doesn't expose closing of a single page, so it is done through its internals, kept by
+     * consumer ProGuard rules of the library. All are null if they are not available, for example with
+     * another version of Pdfium, then {@link Constants.Cache#MAX_OPEN_PAGES} has no effect and pages
+     * stay open until the document is closed.
+     */
+    private static Field nativePagesField;
+    private static Method nativeClosePageMethod;
+    private static Object pdfiumLock;
+
+    static {
+        try {
+            Field pagesField = PdfDocument.class.getDeclaredField("mNativePagesPtr");
+            pagesField.setAccessible(true);
+            Method closePageMethod = PdfiumCore.class.getDeclaredMethod("nativeClosePage", long.class);
+            closePageMethod.setAccessible(true);
+            Field lockField = PdfiumCore.class.getDeclaredField("lock");
+            lockField.setAccessible(true);
+            pdfiumLock = lockField.get(null);
+            nativePagesField = pagesField;
+            nativeClosePageMethod = closePageMethod;
+        } catch (Exception e) {
+            Log.w(TAG, "Closing of single pages is not supported, pages stay open until the document is closed");
+        }
+    }
+
     private PdfDocument pdfDocument;
     private PdfiumCore pdfiumCore;
     private int pagesCount = 0;
-    /** Original page sizes */
-    private List<Size> originalPageSizes = new ArrayList<>();
-    /** Scaled page sizes */
-    private List<SizeF> pageSizes = new ArrayList<>();
+    /** Original page widths */
+    private int[] originalPageWidths = new int[0];
+    /** Original page heights */
+    private int[] originalPageHeights = new int[0];
+    /** Pages with original size read from the document, null if all sizes are known */
+    private boolean[] knownPageSizes;
+    /** Number of pages with estimated original size */
+    private int estimatedPagesCount = 0;
+    /** View size of the current layout, null before the layout is calculated */
+    private Size layoutViewSize;
+    /** Range of pages with original size changed since the layout was calculated, empty if first is after last */
+    private int firstOutdatedPage = 0;
+    private int lastOutdatedPage = -1;
+    /** Stores page sizes read in lazy mode, null if they are not cached or were already stored */
+    private PageSizesCache pageSizesCache;
+    /** Scaled page widths */
+    private float[] pageWidths = new float[0];
+    /** Scaled page heights */
+    private float[] pageHeights = new float[0];
     /** Opened pages with indicator whether opening was successful */
     private SparseBooleanArray openedPages = new SparseBooleanArray();
+    /** Successfully opened document pages with the user page they were last used for, least recently used first */
+    private LinkedHashMap<Integer, Integer> openPagesLru = new LinkedHashMap<>(16, 0.75f, true);
+    /** Number of renders in progress by document page, pinned pages are not closed */
+    private SparseIntArray pinnedPages = new SparseIntArray();
+    /** Document disposed while pages were pinned, closed when the last render finishes */
+    private PdfDocument disposedDocument;
+    /** Size of {@link #openPagesLru}, for reading without the lock */
+    private volatile int openPagesCount = 0;
+    /** Number of pages closed to keep open pages within the limit */
+    private volatile int closedPagesCount = 0;
     /** Page with maximum width */
     private Size originalMaxWidthPageSize = new Size(0, 0);
     /** Page with maximum height */
@@ -58,9 +131,9 @@ public class PdfFile {
     /** Calculate spacing automatically so each page fits on it's own in the center of the view */
     private boolean autoSpacing;
     /** Calculated offsets for pages */
-    private List<Float> pageOffsets = new ArrayList<>();
+    private float[] pageOffsets = new float[0];
     /** Calculated auto spacing for pages */
-    private List<Float> pageSpacing = new ArrayList<>();
+    private float[] pageSpacing = new float[0];
     /** Calculated document length (width or height, depending on swipe mode) */
     private float documentLength = 0;
     private final FitPolicy pageFitPolicy;
@@ -70,8 +143,15 @@ public class PdfFile {
      */
     private int[] originalUserPages;
 
+    /**
+     * @param lazyPageSizes read sizes only of pages around the initial page, estimating the others
+     *                      until they are set with {@link #setOriginalPageSize(int, Size)}
+     * @param initialPage   user page shown first
+     * @param pageSizesCache original page sizes stored when the document was opened before, may be null
+     */
     PdfFile(PdfiumCore pdfiumCore, PdfDocument pdfDocument, FitPolicy pageFitPolicy, Size viewSize, int[] originalUserPages,
-            boolean isVertical, int spacing, boolean autoSpacing) {
+            boolean isVertical, int spacing, boolean autoSpacing, boolean lazyPageSizes, int initialPage,
+            PageSizesCache pageSizesCache) {
         this.pdfiumCore = pdfiumCore;
         this.pdfDocument = pdfDocument;
         this.pageFitPolicy = pageFitPolicy;
@@ -79,67 +159,218 @@ public class PdfFile {
         this.isVertical = isVertical;
         this.spacingPx = spacing;
         this.autoSpacing = autoSpacing;
-        setup(viewSize);
+        setup(viewSize, lazyPageSizes, initialPage, pageSizesCache);
     }
 
-    private void setup(Size viewSize) {
+    private void setup(Size viewSize, boolean lazyPageSizes, int initialPage, PageSizesCache pageSizesCache) {
         if (originalUserPages != null) {
             pagesCount = originalUserPages.length;
         } else {
             pagesCount = pdfiumCore.getPageCount(pdfDocument);
         }
 
-        for (int i = 0; i < pagesCount; i++) {
-            Size pageSize = pdfiumCore.getPageSize(pdfDocument, documentPage(i));
-            if (pageSize.getWidth() > originalMaxWidthPageSize.getWidth()) {
-                originalMaxWidthPageSize = pageSize;
+        originalPageWidths = new int[pagesCount];
+        originalPageHeights = new int[pagesCount];
+        if (pageSizesCache != null && pageSizesCache.read(originalPageWidths, originalPageHeights)) {
+            for (int i = 0; i < pagesCount; i++) {
+                if (originalPageWidths[i] > originalMaxWidthPageSize.getWidth()) {
+                    originalMaxWidthPageSize = new Size(originalPageWidths[i], originalPageHeights[i]);
+                }
+                if (originalPageHeights[i] > originalMaxHeightPageSize.getHeight()) {
+                    originalMaxHeightPageSize = new Size(originalPageWidths[i], originalPageHeights[i]);
+                }
+            }
+        } else if (lazyPageSizes && pagesCount > LAZY_INITIAL_PAGES) {
+            int first = Math.max(0, Math.min(initialPage - LAZY_INITIAL_PAGES / 2, pagesCount - LAZY_INITIAL_PAGES));
+            int last = first + LAZY_INITIAL_PAGES - 1;
+            knownPageSizes = new boolean[pagesCount];
+            estimatedPagesCount = pagesCount;
+            for (int i = first; i <= last; i++) {
+                setOriginalPageSize(i, pdfiumCore.getPageSize(pdfDocument, documentPage(i)));
             }
-            if (pageSize.getHeight() > originalMaxHeightPageSize.getHeight()) {
-                originalMaxHeightPageSize = pageSize;
+            // Pages are assumed to have uniform size until their size is read
+            for (int i = 0; i < pagesCount; i++) {
+                if (i < first || i > last) {
+                    originalPageWidths[i] = originalPageWidths[first];
+                    originalPageHeights[i] = originalPageHeights[first];
+                }
+            }
+            // stored when all sizes are read, see PageSizesAsyncTask
+            this.pageSizesCache = pageSizesCache;
+        } else {
+            for (int i = 0; i < pagesCount; i++) {
+                setOriginalPageSize(i, pdfiumCore.getPageSize(pdfDocument, documentPage(i)));
+            }
+            if (pageSizesCache != null) {
+                pageSizesCache.write(originalPageWidths, originalPageHeights);
             }
-            originalPageSizes.add(pageSize);
         }
 
         recalculatePageSizes(viewSize);
     }
 
     /**
-     * Call after view size change to recalculate page sizes, offsets and document length
+     * Store original size of the page, layout is updated by {@link #recalculatePageSizes(Size)}
+     */
+    void setOriginalPageSize(int pageIndex, Size pageSize) {
+        boolean maxSizeChanged = false;
+        if (pageSize.getWidth() > originalMaxWidthPageSize.getWidth()) {
+            originalMaxWidthPageSize = pageSize;
+            maxSizeChanged = true;
+        }
+        if (pageSize.getHeight() > originalMaxHeightPageSize.getHeight()) {
+            originalMaxHeightPageSize = pageSize;
+            maxSizeChanged = true;
+        }
+        if (maxSizeChanged) {
+            // pages are scaled relative to the largest one, so all of them change
+            firstOutdatedPage = 0;
+            lastOutdatedPage = pagesCount - 1;
+        } else {
+            firstOutdatedPage = Math.min(firstOutdatedPage, pageIndex);
+            lastOutdatedPage = Math.max(lastOutdatedPage, pageIndex);
+        }
+        originalPageWidths[pageIndex] = pageSize.getWidth();
+        originalPageHeights[pageIndex] = pageSize.getHeight();
+        if (knownPageSizes != null && !knownPageSizes[pageIndex]) {
+            knownPageSizes[pageIndex] = true;
+            estimatedPagesCount--;
+        }
+    }
+
+    /**
+     * Read original size of the page from the document, may be called from a background thread
+     *
+     * @return size of the page or null if the document was disposed
+     */
+    Size readOriginalPageSize(int pageIndex) {
+        synchronized (lock) {
+            if (pdfDocument == null) {
+                return null;
+            }
+            return pdfiumCore.getPageSize(pdfDocument, documentPage(pageIndex));
+        }
+    }
+
+    /** True if the page size is estimated, because it was not read in lazy mode yet */
+    boolean isPageSizeEstimated(int pageIndex) {
+        return knownPageSizes != null && !knownPageSizes[pageIndex];
+    }
+
+    boolean hasEstimatedPageSizes() {
+        return estimatedPagesCount > 0;
+    }
+
+    /** Cache which should store page sizes once all of them are read in lazy mode, may be null */
+    PageSizesCache getPageSizesCache() {
+        return pageSizesCache;
+    }
+
+    /** Copy original page sizes, estimated ones included, into arrays of pages count length */
+    void copyOriginalPageSizes(int[] widths, int[] heights) {
+        System.arraycopy(originalPageWidths, 0, widths, 0, pagesCount);
+        System.arraycopy(originalPageHeights, 0, heights, 0, pagesCount);
+    }
+
+    /**
+     * Call after view size change to recalculate page sizes, offsets and document length.
+     * For the same view size only pages from the first one with changed original size are laid out again,
+     * so sizes read in lazy mode don't cost a layout of the whole document for every chunk.
      *
      * @param viewSize new size of changed view
+     * @return pages with changed scaled size, their grids of parts change with it
      */
-    public void recalculatePageSizes(Size viewSize) {
-        pageSizes.clear();
+    public boolean[] recalculatePageSizes(Size viewSize) {
+        boolean[] resizedPages = new boolean[pagesCount];
+        boolean wholeLayout = pageWidths.length != pagesCount || !viewSize.equals(layoutViewSize);
+        int first = wholeLayout ? 0 : firstOutdatedPage;
+        int last = wholeLayout ? pagesCount - 1 : lastOutdatedPage;
+        firstOutdatedPage = pagesCount;
+        lastOutdatedPage = -1;
+        layoutViewSize = viewSize;
+        if (first > last) {
+            return resizedPages;
+        }
+        if (pageWidths.length != pagesCount) {
+            pageWidths = new float[pagesCount];
+            pageHeights = new float[pagesCount];
+        }
+        if (autoSpacing && pageSpacing.length != pagesCount) {
+            pageSpacing = new float[pagesCount];
+        }
         PageSizeCalculator calculator = new PageSizeCalculator(pageFitPolicy, originalMaxWidthPageSize,
                 originalMaxHeightPageSize, viewSize);
         maxWidthPageSize = calculator.getOptimalMaxWidthPageSize();
         maxHeightPageSize = calculator.getOptimalMaxHeightPageSize();
 
-        for (Size size : originalPageSizes) {
-            pageSizes.add(calculator.calculate(size));
-        }
-        if (autoSpacing) {
-            prepareAutoSpacing(viewSize);
+        for (int i = first; i <= last; i++) {
+            SizeF size = calculator.calculate(new Size(originalPageWidths[i], originalPageHeights[i]));
+            resizedPages[i] = pageWidths[i] != size.getWidth() || pageHeights[i] != size.getHeight();
+            pageWidths[i] = size.getWidth();
+            pageHeights[i] = size.getHeight();
+            if (autoSpacing) {
+                pageSpacing[i] = calculateAutoSpacing(i, viewSize);
+            }
         }
+        // summed again, adding only the difference would accumulate rounding errors
         prepareDocLen();
-        preparePagesOffset();
+        preparePagesOffset(first);
+        return resizedPages;
     }
 
     public int getPagesCount() {
         return pagesCount;
     }
 
+    /**
+     * Allocates a new object, use {@link #getPageWidth(int)} and {@link #getPageHeight(int)} on the draw path
+     */
     public SizeF getPageSize(int pageIndex) {
+        return new SizeF(getPageWidth(pageIndex), getPageHeight(pageIndex));
+    }
+
+    /**
+     * Allocates a new object, use {@link #getPageWidth(int)} and {@link #getPageHeight(int)} on the draw path
+     */
+    public SizeF getScaledPageSize(int pageIndex, float zoom) {
+        return new SizeF(getPageWidth(pageIndex) * zoom, getPageHeight(pageIndex) * zoom);
+    }
+
+    /** Get scaled page width, 0 if the page doesn't exist */
+    public float getPageWidth(int pageIndex) {
         int docPage = documentPage(pageIndex);
         if (docPage < 0) {
-            return new SizeF(0, 0);
+            return 0;
         }
-        return pageSizes.get(pageIndex);
+        return pageWidths[pageIndex];
     }
 
-    public SizeF getScaledPageSize(int pageIndex, float zoom) {
-        SizeF size = getPageSize(pageIndex);
-        return new SizeF(size.getWidth() * zoom, size.getHeight() * zoom);
+    /** Get scaled page height, 0 if the page doesn't exist */
+    public float getPageHeight(int pageIndex) {
+        int docPage = documentPage(pageIndex);
+        if (docPage < 0) {
+            return 0;
+        }
+        return pageHeights[pageIndex];
+    }
+
+    /**
+     * Get bounds of the page in the document at given zoom
+     *
+     * @param out rectangle the bounds are written to
+     * @return the out rectangle
+     */
+    public RectF getPageBounds(int pageIndex, float zoom, RectF out) {
+        float width = getPageWidth(pageIndex) * zoom;
+        float height = getPageHeight(pageIndex) * zoom;
+        float primaryOffset = getPageOffset(pageIndex, zoom);
+        float secondaryOffset = getSecondaryPageOffset(pageIndex, zoom);
+        if (isVertical) {
+            out.set(secondaryOffset, primaryOffset, secondaryOffset + width, primaryOffset + height);
+        } else {
+            out.set(primaryOffset, secondaryOffset, primaryOffset + width, secondaryOffset + height);
+        }
+        return out;
     }
 
     /**
@@ -159,50 +390,60 @@ public class PdfFile {
         return getMaxPageSize().getHeight();
     }
 
-    private void prepareAutoSpacing(Size viewSize) {
-        pageSpacing.clear();
-        for (int i = 0; i < getPagesCount(); i++) {
-            SizeF pageSize = pageSizes.get(i);
-            float spacing = Math.max(0, isVertical ? viewSize.getHeight() - pageSize.getHeight() :
-                    viewSize.getWidth() - pageSize.getWidth());
-            if (i < getPagesCount() - 1) {
-                spacing += spacingPx;
-            }
-            pageSpacing.add(spacing);
+    private float calculateAutoSpacing(int pageIndex, Size viewSize) {
+        float spacing = Math.max(0, isVertical ? viewSize.getHeight() - pageHeights[pageIndex] :
+                viewSize.getWidth() - pageWidths[pageIndex]);
+        if (pageIndex < getPagesCount() - 1) {
+            spacing += spacingPx;
         }
+        return spacing;
+    }
+
+    /** Length of the page and spacing after it in the document */
+    private float getPageExtent(int pageIndex) {
+        float length = isVertical ? pageHeights[pageIndex] : pageWidths[pageIndex];
+        if (autoSpacing) {
+            length += pageSpacing[pageIndex];
+        } else if (pageIndex < getPagesCount() - 1) {
+            length += spacingPx;
+        }
+        return length;
     }
 
     private void prepareDocLen() {
         float length = 0;
         for (int i = 0; i < getPagesCount(); i++) {
-            SizeF pageSize = pageSizes.get(i);
-            length += isVertical ? pageSize.getHeight() : pageSize.getWidth();
-            if (autoSpacing) {
-                length += pageSpacing.get(i);
-            } else if (i < getPagesCount() - 1) {
-                length += spacingPx;
-            }
+            length += getPageExtent(i);
         }
         documentLength = length;
     }
 
-    private void preparePagesOffset() {
-        pageOffsets.clear();
+    /** Calculate offsets of pages from the given one, offsets of pages before it are kept */
+    private void preparePagesOffset(int fromPage) {
+        if (pageOffsets.length != getPagesCount()) {
+            pageOffsets = new float[getPagesCount()];
+            fromPage = 0;
+        }
         float offset = 0;
-        for (int i = 0; i < getPagesCount(); i++) {
-            SizeF pageSize = pageSizes.get(i);
-            float size = isVertical ? pageSize.getHeight() : pageSize.getWidth();
+        if (fromPage > 0) {
+            // position after the previous page, as the loop below leaves it
+            int previous = fromPage - 1;
+            float previousSize = isVertical ? pageHeights[previous] : pageWidths[previous];
+            offset = pageOffsets[previous] + previousSize + (autoSpacing ? pageSpacing[previous] / 2f : spacingPx);
+        }
+        for (int i = fromPage; i < getPagesCount(); i++) {
+            float size = isVertical ? pageHeights[i] : pageWidths[i];
             if (autoSpacing) {
-                offset += pageSpacing.get(i) / 2f;
+                offset += pageSpacing[i] / 2f;
                 if (i == 0) {
                     offset -= spacingPx / 2f;
                 } else if (i == getPagesCount() - 1) {
                     offset += spacingPx / 2f;
                 }
-                pageOffsets.add(offset);
-                offset += size + pageSpacing.get(i) / 2f;
+                pageOffsets[i] = offset;
+                offset += size + pageSpacing[i] / 2f;
             } else {
-                pageOffsets.add(offset);
+                pageOffsets[i] = offset;
                 offset += size + spacingPx;
             }
         }
@@ -216,12 +457,11 @@ public class PdfFile {
      * Get the page's height if swiping vertical, or width if swiping horizontal.
      */
     public float getPageLength(int pageIndex, float zoom) {
-        SizeF size = getPageSize(pageIndex);
-        return (isVertical ? size.getHeight() : size.getWidth()) * zoom;
+        return (isVertical ? getPageHeight(pageIndex) : getPageWidth(pageIndex)) * zoom;
     }
 
     public float getPageSpacing(int pageIndex, float zoom) {
-        float spacing = autoSpacing ? pageSpacing.get(pageIndex) : spacingPx;
+        float spacing = autoSpacing ? pageSpacing[pageIndex] : spacingPx;
         return spacing * zoom;
     }
 
@@ -231,31 +471,41 @@ public class PdfFile {
         if (docPage < 0) {
             return 0;
         }
-        return pageOffsets.get(pageIndex) * zoom;
+        return pageOffsets[pageIndex] * zoom;
     }
 
     /** Get secondary page offset, that is X for vertical scroll and Y for horizontal scroll */
     public float getSecondaryPageOffset(int pageIndex, float zoom) {
-        SizeF pageSize = getPageSize(pageIndex);
         if (isVertical) {
             float maxWidth = getMaxPageWidth();
-            return zoom * (maxWidth - pageSize.getWidth()) / 2; //x
+            return zoom * (maxWidth - getPageWidth(pageIndex)) / 2; //x
         } else {
             float maxHeight = getMaxPageHeight();
-            return zoom * (maxHeight - pageSize.getHeight()) / 2; //y
+            return zoom * (maxHeight - getPageHeight(pageIndex)) / 2; //y
         }
     }
 
+    /**
+     * Find the page at given primary offset. Page boundaries, that is page offsets
+     * reduced by half of their spacing, never decrease, so they are binary searched.
+     */
     public int getPageAtOffset(float offset, float zoom) {
-        int currentPage = 0;
-        for (int i = 0; i < getPagesCount(); i++) {
-            float off = pageOffsets.get(i) * zoom - getPageSpacing(i, zoom) / 2f;
-            if (off >= offset) {
-                break;
+        // first page with boundary at or after the offset
+        int low = 0;
+        int high = getPagesCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getPageBoundary(middle, zoom) >= offset) {
+                high = middle;
+            } else {
+                low = middle + 1;
             }
-            currentPage++;
         }
-        return --currentPage >= 0 ? currentPage : 0;
+        return low > 0 ? low - 1 : 0;
+    }
+
+    private float getPageBoundary(int pageIndex, float zoom) {
+        return pageOffsets[pageIndex] * zoom - getPageSpacing(pageIndex, zoom) / 2f;
     }
 
     public boolean openPage(int pageIndex) throws PageRenderingException {
@@ -265,63 +515,239 @@ public class PdfFile {
         }
 
         synchronized (lock) {
+            if (pdfDocument == null) {
+                // disposed, the document was closed on purpose
+                return false;
+            }
             if (openedPages.indexOfKey(docPage) < 0) {
                 try {
-                    pdfiumCore.openPage(pdfDocument, docPage);
-                    openedPages.put(docPage, true);
+                    openDocumentPage(docPage, pageIndex);
                     return true;
                 } catch (Exception e) {
                     openedPages.put(docPage, false);
                     throw new PageRenderingException(pageIndex, e);
                 }
             }
+            if (openedPages.get(docPage)) {
+                openPagesLru.put(docPage, pageIndex);
+            }
             return false;
         }
     }
 
+    /**
+     * Open the page again if it was closed, must be called with {@link #lock} held
+     *
+     * @return false if the page cannot be used
+     */
+    private boolean ensurePageOpen(int docPage, int pageIndex) {
+        if (docPage < 0 || pdfDocument == null) {
+            return false;
+        }
+        if (openedPages.indexOfKey(docPage) < 0) {
+            try {
+                openDocumentPage(docPage, pageIndex);
+            } catch (Exception e) {
+                openedPages.put(docPage, false);
+                return false;
+            }
+            return true;
+        }
+        if (!openedPages.get(docPage)) {
+            return false;
+        }
+        openPagesLru.put(docPage, pageIndex);
+        return true;
+    }
+
+    /** Must be called with {@link #lock} held */
+    private void openDocumentPage(int docPage, int pageIndex) {
+        pdfiumCore.openPage(pdfDocument, docPage);
+        openedPages.put(docPage, true);
+        openPagesLru.put(docPage, pageIndex);
+        closeFarPages(docPage, pageIndex);
+        openPagesCount = openPagesLru.size();
+    }
+
+    /**
+     * Close least recently used pages above {@link Constants.Cache#MAX_OPEN_PAGES}, preferring the ones not next
+     * to the page just opened, as they are likely to be rendered soon. Pages being rendered are never closed,
+     * so the limit may be exceeded until they are done. Must be called with {@link #lock} held.
+     */
+    private void closeFarPages(int openedDocPage, int pageIndex) {
+        if (nativeClosePageMethod == null) {
+            return;
+        }
+        int maxOpenPages = Math.max(2, Constants.Cache.MAX_OPEN_PAGES);
+        while (openPagesLru.size() > maxOpenPages) {
+            Integer closed = null;
+            Integer leastRecentlyUsed = null;
+            for (Map.Entry<Integer, Integer> entry : openPagesLru.entrySet()) {
+                int docPage = entry.getKey();
+                if (docPage == openedDocPage || pinnedPages.get(docPage) > 0) {
+                    continue;
+                }
+                if (leastRecentlyUsed == null) {
+                    leastRecentlyUsed = docPage;
+                }
+                if (Math.abs(entry.getValue() - pageIndex) > 1) {
+                    closed = docPage;
+                    break;
+                }
+            }
+            if (closed == null) {
+                closed = leastRecentlyUsed;
+            }
+            if (closed == null) {
+                return;
+            }
+            closeDocumentPage(closed);
+        }
+    }
+
+    /**
+     * Close the native page and forget it, so it is opened again when needed. Must be called with {@link #lock} held.
+     */
+    @SuppressWarnings("unchecked")
+    private void closeDocumentPage(int docPage) {
+        try {
+            synchronized (pdfiumLock) {
+                Map<Integer, Long> nativePages = (Map<Integer, Long>) nativePagesField.get(pdfDocument);
+                Long pagePtr = nativePages.remove(docPage);
+                if (pagePtr != null) {
+                    nativeClosePageMethod.invoke(pdfiumCore, pagePtr);
+                }
+            }
+            closedPagesCount++;
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot close page " + docPage + ", pages stay open until the document is closed", e);
+            nativeClosePageMethod = null;
+        }
+        // Pdfium reuses a page which is still open, so forgetting it is safe even if closing failed
+        openPagesLru.remove(docPage);
+        openedPages.delete(docPage);
+    }
+
     public boolean pageHasError(int pageIndex) {
         int docPage = documentPage(pageIndex);
-        return !openedPages.get(docPage, false);
+        synchronized (lock) {
+            return !openedPages.get(docPage, false);
+        }
     }
 
-    public void renderPageBitmap(Bitmap bitmap, int pageIndex, Rect bounds, boolean annotationRendering) {
+    /**
+     * The page is pinned instead of holding the document lock while it is rendered, so other rendering
+     * threads can open pages and read from the disk cache meanwhile. Rasterization itself is still
+     * serialised by Pdfium's global lock.
+     *
+     * @return false if the page was not rendered, because it cannot be opened or the document was closed
+     * meanwhile. Pdfium doesn't report errors of rendering, so the bitmap then holds its previous pixels.
+     */
+    public boolean renderPageBitmap(Bitmap bitmap, int pageIndex, Rect bounds, boolean annotationRendering) {
         int docPage = documentPage(pageIndex);
-        pdfiumCore.renderPageBitmap(pdfDocument, bitmap, docPage,
-                bounds.left, bounds.top, bounds.width(), bounds.height(), annotationRendering);
+        PdfDocument document;
+        synchronized (lock) {
+            if (!ensurePageOpen(docPage, pageIndex)) {
+                return false;
+            }
+            pinnedPages.put(docPage, pinnedPages.get(docPage) + 1);
+            document = pdfDocument;
+        }
+        try {
+            pdfiumCore.renderPageBitmap(document, bitmap, docPage,
+                    bounds.left, bounds.top, bounds.width(), bounds.height(), annotationRendering);
+        } finally {
+            synchronized (lock) {
+                int pins = pinnedPages.get(docPage) - 1;
+                if (pins > 0) {
+                    pinnedPages.put(docPage, pins);
+                } else {
+                    pinnedPages.delete(docPage);
+                }
+                if (disposedDocument != null && pinnedPages.size() == 0) {
+                    pdfiumCore.closeDocument(disposedDocument);
+                    disposedDocument = null;
+                }
+            }
+        }
+        synchronized (lock) {
+            return pdfDocument == document;
+        }
     }
 
     public PdfDocument.Meta getMetaData() {
-        if (pdfDocument == null) {
-            return null;
+        synchronized (lock) {
+            if (pdfDocument == null) {
+                return null;
+            }
+            return pdfiumCore.getDocumentMeta(pdfDocument);
         }
-        return pdfiumCore.getDocumentMeta(pdfDocument);
     }
 
     public List<PdfDocument.Bookmark> getBookmarks() {
-        if (pdfDocument == null) {
-            return new ArrayList<>();
+        synchronized (lock) {
+            if (pdfDocument == null) {
+                return new ArrayList<>();
+            }
+            return pdfiumCore.getTableOfContents(pdfDocument);
         }
-        return pdfiumCore.getTableOfContents(pdfDocument);
     }
 
     public List<PdfDocument.Link> getPageLinks(int pageIndex) {
         int docPage = documentPage(pageIndex);
-        return pdfiumCore.getPageLinks(pdfDocument, docPage);
+        synchronized (lock) {
+            if (!ensurePageOpen(docPage, pageIndex)) {
+                return new ArrayList<>();
+            }
+            return pdfiumCore.getPageLinks(pdfDocument, docPage);
+        }
     }
 
     public RectF mapRectToDevice(int pageIndex, int startX, int startY, int sizeX, int sizeY,
                                  RectF rect) {
         int docPage = documentPage(pageIndex);
-        return pdfiumCore.mapRectToDevice(pdfDocument, docPage, startX, startY, sizeX, sizeY, 0, rect);
+        synchronized (lock) {
+            if (!ensurePageOpen(docPage, pageIndex)) {
+                return new RectF();
+            }
+            return pdfiumCore.mapRectToDevice(pdfDocument, docPage, startX, startY, sizeX, sizeY, 0, rect);
+        }
+    }
+
+    /** Number of native pages currently open */
+    public int getOpenPagesCount() {
+        return openPagesCount;
+    }
+
+    /** Rough estimate of native memory used by open pages, in bytes */
+    public long getOpenPagesMemory() {
+        return getOpenPagesCount() * OPEN_PAGE_MEMORY;
+    }
+
+    /** Number of pages closed since the document was loaded to keep open pages within the limit */
+    public int getClosedPagesCount() {
+        return closedPagesCount;
     }
 
+    /**
+     * Close the document. If pages are being rendered, the native document is closed
+     * when the last of them is done, but no page can be used from now on.
+     */
     public void dispose() {
-        if (pdfiumCore != null && pdfDocument != null) {
-            pdfiumCore.closeDocument(pdfDocument);
-        }
+        synchronized (lock) {
+            if (pdfiumCore != null && pdfDocument != null) {
+                if (pinnedPages.size() == 0) {
+                    pdfiumCore.closeDocument(pdfDocument);
+                } else {
+                    disposedDocument = pdfDocument;
+                }
+            }
 
-        pdfDocument = null;
-        originalUserPages = null;
+            openPagesLru.clear();
+            openPagesCount = 0;
+            pdfDocument = null;
+            originalUserPages = null;
+        }
     }
 
     /**
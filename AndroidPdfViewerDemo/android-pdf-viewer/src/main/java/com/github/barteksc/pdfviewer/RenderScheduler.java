@@ -0,0 +1,382 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Orders pending {@link RenderingTask}s, so parts that are visible and close to the center
+ * of the view are rendered first.
+ * <p>
+ * Thumbnails and page parts are kept in separate lanes. A thumbnail covers the whole page
+ * for a fraction of the cost of a part, so it is taken before a part with the same
+ * visibility, but never before a visible part when the thumbnail itself is off-screen.
+ * Previews of parts go before full parts, so every visible part is shown at low resolution first.
+ * <p>
+ * Tasks are indexed by their {@link com.github.barteksc.pdfviewer.util.TileKey}, so every
+ * {@link PagesLoader} pass is applied as a diff: tasks requested again are kept and only
+ * re-prioritized, new ones are added, and tasks not requested during the pass are cancelled
+ * by {@link #endPass()}. Tasks being rendered are marked as cancelled, so workers can stop them early.
+ * <p>
+ * Not thread safe, access is guarded by {@link RenderingPool}.
+ */
+class RenderScheduler {
+
+    private static final String TAG = RenderScheduler.class.getSimpleName();
+
+    private final TaskComparator comparator = new TaskComparator();
+
+    private final TaskQueue thumbnails = new TaskQueue(comparator);
+
+    private final TaskQueue parts = new TaskQueue(comparator);
+
+    /** Tasks waiting in one of the lanes */
+    private final LongSparseArray<RenderingTask> pending = new LongSparseArray<>();
+
+    /** Tasks taken by workers and not finished yet */
+    private final LongSparseArray<RenderingTask> inProgress = new LongSparseArray<>();
+
+    /** Incremented for every task, keeps insertion order between tasks with equal priority */
+    private long sequence = 0;
+
+    /** Identifier of the current loader pass */
+    private int pass = 0;
+
+    /** Statistics of the current, or last finished, pass */
+    private int keptTasks;
+    private int cancelledTasks;
+    private int cancelledInProgressTasks;
+    private int addedTasks;
+
+    void beginPass() {
+        pass++;
+        keptTasks = 0;
+        cancelledTasks = 0;
+        cancelledInProgressTasks = 0;
+        addedTasks = 0;
+    }
+
+    /**
+     * Cancel pending tasks that were not requested since {@link #beginPass()}
+     */
+    void endPass() {
+        // iterating backwards, so removed entries don't shift the ones still to visit
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            RenderingTask task = pending.valueAt(i);
+            if (task.pass != pass) {
+                lane(task).remove(task);
+                pending.removeAt(i);
+                cancelledTasks++;
+            }
+        }
+        for (int i = 0; i < inProgress.size(); i++) {
+            RenderingTask task = inProgress.valueAt(i);
+            if (task.pass != pass && !task.cancelled) {
+                task.cancelled = true;
+                cancelledInProgressTasks++;
+            }
+        }
+        if (Constants.DEBUG_MODE) {
+            Log.d(TAG, "Pass " + pass + ": kept " + keptTasks + ", cancelled " + cancelledTasks
+                    + " (" + cancelledInProgressTasks + " in progress), added " + addedTasks + " tasks");
+        }
+    }
+
+    /**
+     * Keep a task that is already pending or being rendered, updating its priority.
+     * Pending tasks also take the new render size and bounds, so they always match the requested part.
+     *
+     * @return false if no such task exists and a new one has to be added
+     */
+    boolean keep(long key, float width, float height, RectF bounds, int cacheOrder, boolean visible, float priority) {
+        RenderingTask task = pending.get(key);
+        if (task != null) {
+            task.pass = pass;
+            task.width = width;
+            task.height = height;
+            task.bounds.set(bounds);
+            task.cacheOrder = cacheOrder;
+            task.visible = visible;
+            task.priority = priority;
+            lane(task).update(task);
+            keptTasks++;
+            return true;
+        }
+        task = inProgress.get(key);
+        if (task != null) {
+            task.pass = pass;
+            // requested again before the worker noticed, otherwise it is scheduled again when finished
+            task.cancelled = false;
+            keptTasks++;
+            return true;
+        }
+        return false;
+    }
+
+    void add(RenderingTask task) {
+        task.pass = pass;
+        task.sequence = sequence++;
+        pending.put(task.key, task);
+        lane(task).add(task);
+        addedTasks++;
+    }
+
+    RenderingTask poll() {
+        RenderingTask thumbnail = thumbnails.peek();
+        RenderingTask part = parts.peek();
+        RenderingTask task;
+        if (thumbnail == null) {
+            task = parts.poll();
+        } else if (part == null) {
+            task = thumbnails.poll();
+        } else if (part.visible && !thumbnail.visible) {
+            task = parts.poll();
+        } else {
+            task = thumbnails.poll();
+        }
+        if (task != null) {
+            pending.delete(task.key);
+            inProgress.put(task.key, task);
+        }
+        return task;
+    }
+
+    void finish(RenderingTask task) {
+        // the key may be taken by a newer task if this one was cancelled by cancelPages()
+        if (inProgress.get(task.key) == task) {
+            inProgress.delete(task.key);
+        }
+    }
+
+    /**
+     * Cancel all tasks of given pages except thumbnails, used when their grids of parts change,
+     * so tasks with equal keys cover other regions of the page. Tasks being rendered are also
+     * forgotten, so they are neither kept nor scheduled again.
+     */
+    void cancelPages(boolean[] pages) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            RenderingTask task = pending.valueAt(i);
+            if (isCancelledPage(task, pages)) {
+                lane(task).remove(task);
+                pending.removeAt(i);
+                cancelledTasks++;
+            }
+        }
+        for (int i = inProgress.size() - 1; i >= 0; i--) {
+            RenderingTask task = inProgress.valueAt(i);
+            if (isCancelledPage(task, pages)) {
+                task.cancelled = true;
+                task.pass = -1;
+                inProgress.removeAt(i);
+                cancelledInProgressTasks++;
+            }
+        }
+    }
+
+    private static boolean isCancelledPage(RenderingTask task, boolean[] pages) {
+        return !task.thumbnail && task.page < pages.length && pages[task.page];
+    }
+
+    /**
+     * Schedule a finished task again, used for the full part after its preview.
+     * Tasks not requested by the current pass are dropped, the next pass requests them if needed
+     *
+     * @return true if the task was scheduled
+     */
+    boolean requeue(RenderingTask task) {
+        if (task.pass != pass) {
+            return false;
+        }
+        task.cancelled = false;
+        task.abandoned = false;
+        pending.put(task.key, task);
+        lane(task).add(task);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return pending.size() == 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < inProgress.size(); i++) {
+            inProgress.valueAt(i).cancelled = true;
+        }
+        thumbnails.clear();
+        parts.clear();
+        pending.clear();
+    }
+
+    int getKeptTasks() {
+        return keptTasks;
+    }
+
+    int getCancelledTasks() {
+        return cancelledTasks;
+    }
+
+    int getCancelledInProgressTasks() {
+        return cancelledInProgressTasks;
+    }
+
+    int getAddedTasks() {
+        return addedTasks;
+    }
+
+    private TaskQueue lane(RenderingTask task) {
+        return task.thumbnail ? thumbnails : parts;
+    }
+
+    class TaskComparator implements Comparator<RenderingTask> {
+        @Override
+        public int compare(RenderingTask task1, RenderingTask task2) {
+            if (task1.visible != task2.visible) {
+                return task1.visible ? -1 : 1;
+            }
+            if (task1.preview != task2.preview) {
+                return task1.preview ? -1 : 1;
+            }
+            if (task1.priority != task2.priority) {
+                return task1.priority < task2.priority ? -1 : 1;
+            }
+            if (task1.sequence == task2.sequence) {
+                return 0;
+            }
+            return task1.sequence < task2.sequence ? -1 : 1;
+        }
+    }
+
+    /**
+     * Binary heap remembering position of every task in {@link RenderingTask#heapIndex},
+     * so a task can be removed or re-prioritized in O(log n)
+     */
+    static class TaskQueue {
+
+        private final Comparator<RenderingTask> comparator;
+
+        private RenderingTask[] heap = new RenderingTask[64];
+
+        private int size = 0;
+
+        TaskQueue(Comparator<RenderingTask> comparator) {
+            this.comparator = comparator;
+        }
+
+        void add(RenderingTask task) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = task;
+            task.heapIndex = size;
+            size++;
+            siftUp(size - 1);
+        }
+
+        RenderingTask peek() {
+            return size == 0 ? null : heap[0];
+        }
+
+        RenderingTask poll() {
+            if (size == 0) {
+                return null;
+            }
+            RenderingTask task = heap[0];
+            removeAt(0);
+            return task;
+        }
+
+        void remove(RenderingTask task) {
+            if (task.heapIndex >= 0) {
+                removeAt(task.heapIndex);
+            }
+        }
+
+        /** Restore heap order after priority of the task has changed */
+        void update(RenderingTask task) {
+            siftUp(task.heapIndex);
+            siftDown(task.heapIndex);
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                heap[i].heapIndex = -1;
+                heap[i] = null;
+            }
+            size = 0;
+        }
+
+        private void removeAt(int index) {
+            RenderingTask removed = heap[index];
+            size--;
+            if (index != size) {
+                RenderingTask last = heap[size];
+                set(index, last);
+                siftDown(index);
+                if (heap[index] == last) {
+                    siftUp(index);
+                }
+            }
+            heap[size] = null;
+            removed.heapIndex = -1;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (comparator.compare(heap[index], heap[parent]) >= 0) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && comparator.compare(heap[child + 1], heap[child]) < 0) {
+                    child++;
+                }
+                if (comparator.compare(heap[child], heap[index]) >= 0) {
+                    break;
+                }
+                swap(index, child);
+                index = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            RenderingTask task = heap[i];
+            set(i, heap[j]);
+            set(j, task);
+        }
+
+        private void set(int index, RenderingTask task) {
+            heap[index] = task;
+            task.heapIndex = index;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.Constants;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands rendered parts over from rendering threads to the UI thread. Parts are collected in a lock-free
+ * queue and delivered to {@link PDFView} in one batch per frame, followed by a single redraw. Only the first
+ * part of a batch posts to the UI thread, which then drains the queue from a {@link Choreographer} frame
+ * callback, on API versions without it right away.
+ */
+class RenderedPartsQueue implements Runnable {
+
+    private static final String TAG = RenderedPartsQueue.class.getSimpleName();
+
+    private final PDFView pdfView;
+
+    private final ConcurrentLinkedQueue<PagePart> parts = new ConcurrentLinkedQueue<>();
+
+    /** True from the first part of a batch until the batch is drained */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /** Frame callback, null before API 16 */
+    private final FrameCallback frameCallback;
+
+    /** Statistics, accessed on the UI thread only */
+    private int batches = 0;
+
+    private int deliveredParts = 0;
+
+    RenderedPartsQueue(PDFView pdfView) {
+        this.pdfView = pdfView;
+        this.frameCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameCallback() : null;
+    }
+
+    /** Called by rendering threads */
+    void add(PagePart part) {
+        parts.add(part);
+        if (scheduled.compareAndSet(false, true)) {
+            pdfView.post(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (frameCallback != null) {
+            frameCallback.post();
+        } else {
+            drain();
+        }
+    }
+
+    /** Deliver parts waiting for the next frame right away, called on the UI thread */
+    void flush() {
+        drain();
+    }
+
+    private void drain() {
+        // parts added from now on schedule the next batch
+        scheduled.set(false);
+        if (pdfView.isRecycled()) {
+            clear();
+            return;
+        }
+        int count = 0;
+        PagePart part;
+        while ((part = parts.poll()) != null) {
+            pdfView.cacheRenderedPart(part);
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        batches++;
+        deliveredParts += count;
+        if (Constants.DEBUG_MODE) {
+            Log.d(TAG, "Delivered " + count + " parts, " + getPartsPerBatch() + " per batch on average");
+        }
+        pdfView.redraw();
+    }
+
+    /** Drop parts not delivered yet, called on the UI thread */
+    void clear() {
+        pdfView.removeCallbacks(this);
+        if (frameCallback != null) {
+            frameCallback.remove();
+        }
+        PagePart part;
+        while ((part = parts.poll()) != null) {
+            part.getRenderedBitmap().recycle();
+        }
+        scheduled.set(false);
+    }
+
+    /** Average number of parts delivered with a single redraw */
+    float getPartsPerBatch() {
+        return batches > 0 ? (float) deliveredParts / batches : 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameCallback implements Choreographer.FrameCallback {
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            drain();
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+}
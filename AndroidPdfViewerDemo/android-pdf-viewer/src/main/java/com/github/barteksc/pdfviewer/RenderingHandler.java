@@ -27,11 +27,14 @@ import android.util.Log;
 
 import com.github.barteksc.pdfviewer.exception.PageRenderingException;
 import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.Constants;
+
+import java.nio.ByteBuffer;
 
 /**
- * A {@link Handler} that will process incoming {@link RenderingTask} messages
- * and alert {@link PDFView#onBitmapRendered(PagePart)} when the portion of the
- * PDF is ready to render.
+ * A {@link Handler} that will process {@link RenderingTask}s taken from its {@link RenderingPool}
+ * and hand the portion of the PDF ready to render over to the UI thread
+ * through {@link RenderedPartsQueue}.
  */
 class RenderingHandler extends Handler {
     /**
@@ -43,74 +46,150 @@ class RenderingHandler extends Handler {
 
     private PDFView pdfView;
 
+    private RenderingPool pool;
+
     private RectF renderBounds = new RectF();
     private Rect roundedRenderBounds = new Rect();
     private Matrix renderMatrix = new Matrix();
-    private boolean running = false;
 
-    RenderingHandler(Looper looper, PDFView pdfView) {
+    /** Pixels of parts read from {@link DiskTileCache}, grown to the biggest part */
+    private ByteBuffer pixelBuffer;
+
+    RenderingHandler(Looper looper, PDFView pdfView, RenderingPool pool) {
         super(looper);
         this.pdfView = pdfView;
-    }
-
-    void addRenderingTask(int page, float width, float height, RectF bounds, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
-        RenderingTask task = new RenderingTask(width, height, bounds, page, thumbnail, cacheOrder, bestQuality, annotationRendering);
-        Message msg = obtainMessage(MSG_RENDER_TASK, task);
-        sendMessage(msg);
+        this.pool = pool;
     }
 
     @Override
     public void handleMessage(Message message) {
-        RenderingTask task = (RenderingTask) message.obj;
-        try {
-            final PagePart part = proceed(task);
-            if (part != null) {
-                if (running) {
-                    pdfView.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            pdfView.onBitmapRendered(part);
-                        }
-                    });
-                } else {
-                    part.getRenderedBitmap().recycle();
+        // Every message only wakes the worker up, tasks are shared by the whole pool
+        RenderingTask task;
+        while ((task = pool.pollTask()) != null) {
+            boolean rendered = false;
+            long startNanos = System.nanoTime();
+            try {
+                PagePart part = proceed(task);
+                if (part != null && task.cancelled) {
+                    // dropped by the loader while it was rendered, caching it would only evict a needed part
+                    pdfView.bitmapPool.release(part.getRenderedBitmap());
+                    task.abandoned = true;
+                    pool.partDiscarded(System.nanoTime() - startNanos);
+                } else if (part != null) {
+                    rendered = true;
+                    if (pool.isRunning()) {
+                        pdfView.renderedPartsQueue.add(part);
+                    } else {
+                        part.getRenderedBitmap().recycle();
+                    }
                 }
+            } catch (final PageRenderingException ex) {
+                pdfView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pdfView.onPageError(ex);
+                    }
+                });
+            } finally {
+                pool.taskFinished(task, rendered);
             }
-        } catch (final PageRenderingException ex) {
-            pdfView.post(new Runnable() {
-                @Override
-                public void run() {
-                    pdfView.onPageError(ex);
-                }
-            });
         }
     }
 
     private PagePart proceed(RenderingTask renderingTask) throws PageRenderingException {
         PdfFile pdfFile = pdfView.pdfFile;
-        pdfFile.openPage(renderingTask.page);
+        DiskTileCache diskTileCache = pdfView.diskTileCache;
 
         int w = Math.round(renderingTask.width);
         int h = Math.round(renderingTask.height);
 
-        if (w == 0 || h == 0 || pdfFile.pageHasError(renderingTask.page)) {
+        if (w == 0 || h == 0) {
+            return null;
+        }
+        if (renderingTask.cancelled) {
+            renderingTask.abandoned = true;
             return null;
         }
 
-        Bitmap render;
-        try {
-            render = Bitmap.createBitmap(w, h, renderingTask.bestQuality ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565);
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Cannot create bitmap", e);
+        Bitmap.Config config = renderingTask.bestQuality ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+        String diskName = null;
+        if (diskTileCache != null) {
+            diskName = DiskTileCache.getName(renderingTask.key, renderingTask.bounds, w, h, config,
+                    renderingTask.annotationRendering);
+        }
+
+        Bitmap render = null;
+        if (diskTileCache != null) {
+            render = acquireBitmap(w, h, config);
+            if (render == null) {
+                return null;
+            }
+            if (diskTileCache.read(diskName, render, getPixelBuffer(render))) {
+                // a stored part is as quick as a preview, so it replaces both
+                renderingTask.preview = false;
+                return new PagePart(renderingTask.key, renderingTask.page, render,
+                        renderingTask.bounds, renderingTask.thumbnail, renderingTask.cacheOrder);
+            }
+        }
+
+        boolean preview = renderingTask.preview;
+        if (preview) {
+            w = Math.max(1, Math.round(w * Constants.PREVIEW_RATIO));
+            h = Math.max(1, Math.round(h * Constants.PREVIEW_RATIO));
+            pdfView.bitmapPool.release(render);
+            render = null;
+        }
+        if (render == null) {
+            render = acquireBitmap(w, h, config);
+            if (render == null) {
+                return null;
+            }
+        }
+
+        pdfFile.openPage(renderingTask.page);
+        if (pdfFile.pageHasError(renderingTask.page)) {
+            pdfView.bitmapPool.release(render);
+            return null;
+        }
+        if (renderingTask.cancelled) {
+            pdfView.bitmapPool.release(render);
+            renderingTask.abandoned = true;
             return null;
         }
+
         calculateBounds(w, h, renderingTask.bounds);
+        if (!pdfFile.renderPageBitmap(render, renderingTask.page, roundedRenderBounds, renderingTask.annotationRendering)) {
+            // the bitmap still holds pixels of the part it was used for before
+            pdfView.bitmapPool.release(render);
+            return null;
+        }
 
-        pdfFile.renderPageBitmap(render, renderingTask.page, roundedRenderBounds, renderingTask.annotationRendering);
+        if (diskTileCache != null && !preview) {
+            diskTileCache.write(diskName, render);
+        }
 
-        return new PagePart(renderingTask.page, render,
+        return new PagePart(renderingTask.key, renderingTask.page, render,
                 renderingTask.bounds, renderingTask.thumbnail,
-                renderingTask.cacheOrder);
+                renderingTask.cacheOrder, preview);
+    }
+
+    /**
+     * @return bitmap from the pool, or null if it cannot be created
+     */
+    private Bitmap acquireBitmap(int width, int height, Bitmap.Config config) {
+        try {
+            return pdfView.bitmapPool.acquire(width, height, config);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Cannot create bitmap", e);
+            return null;
+        }
+    }
+
+    private ByteBuffer getPixelBuffer(Bitmap bitmap) {
+        if (pixelBuffer == null || pixelBuffer.capacity() < bitmap.getByteCount()) {
+            pixelBuffer = ByteBuffer.allocate(bitmap.getByteCount());
+        }
+        return pixelBuffer;
     }
 
     private void calculateBounds(int width, int height, RectF pageSliceBounds) {
@@ -122,40 +201,4 @@ class RenderingHandler extends Handler {
         renderMatrix.mapRect(renderBounds);
         renderBounds.round(roundedRenderBounds);
     }
-
-    void stop() {
-        running = false;
-    }
-
-    void start() {
-        running = true;
-    }
-
-    private class RenderingTask {
-
-        float width, height;
-
-        RectF bounds;
-
-        int page;
-
-        boolean thumbnail;
-
-        int cacheOrder;
-
-        boolean bestQuality;
-
-        boolean annotationRendering;
-
-        RenderingTask(float width, float height, RectF bounds, int page, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
-            this.page = page;
-            this.width = width;
-            this.height = height;
-            this.bounds = bounds;
-            this.thumbnail = thumbnail;
-            this.cacheOrder = cacheOrder;
-            this.bestQuality = bestQuality;
-            this.annotationRendering = annotationRendering;
-        }
-    }
 }
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+
+/**
+ * Rendering engine made of several workers, each one being a {@link RenderingHandler}
+ * running on its own {@link HandlerThread}.
+ * <p>
+ * Tasks are kept in one {@link RenderScheduler} shared by all workers, so whichever
+ * worker is idle picks the most important pending part. Every worker owns its render
+ * state (bounds, matrix), while access to the document itself is guarded by {@link PdfFile}.
+ */
+class RenderingPool {
+
+    private static final String TAG = RenderingPool.class.getSimpleName();
+
+    private final HandlerThread[] threads;
+
+    private final RenderingHandler[] workers;
+
+    private final RenderScheduler scheduler = new RenderScheduler();
+
+    private final Object lock = new Object();
+
+    /** Index of the worker which will be woken up by the next task */
+    private int nextWorker = 0;
+
+    private volatile boolean running = false;
+
+    /** Workers currently rendering a task */
+    private int activeWorkers = 0;
+
+    /** Start of the current burst, that is the time since the pool stopped being idle */
+    private long burstStartNanos;
+
+    /** Parts rendered in the current burst */
+    private int burstTiles = 0;
+
+    /** Throughput of the last finished burst, in rendered parts per second */
+    private float lastTilesPerSecond = 0;
+
+    /** Tasks stopped because they were cancelled while being rendered, since the pool was created */
+    private int abandonedTasks = 0;
+
+    /** Abandoned tasks which were already rendered, so their work was wasted */
+    private int discardedParts = 0;
+
+    /** Time spent rendering discarded parts */
+    private long wastedNanos = 0;
+
+    RenderingPool(PDFView pdfView, int threadsCount) {
+        threadsCount = Math.max(1, threadsCount);
+        threads = new HandlerThread[threadsCount];
+        workers = new RenderingHandler[threadsCount];
+        for (int i = 0; i < threadsCount; i++) {
+            threads[i] = new HandlerThread("PDF renderer " + i);
+            threads[i].start();
+            workers[i] = new RenderingHandler(threads[i].getLooper(), pdfView, this);
+        }
+    }
+
+    /** Start a new {@link PagesLoader} pass, see {@link RenderScheduler} */
+    void beginPass() {
+        synchronized (lock) {
+            scheduler.beginPass();
+        }
+    }
+
+    /** Finish the pass, cancelling pending tasks which were not requested again */
+    void endPass() {
+        synchronized (lock) {
+            scheduler.endPass();
+        }
+    }
+
+    /**
+     * Request rendering of a part. If the same part is already pending, it is kept
+     * with updated priority, otherwise a new task is scheduled.
+     *
+     * @param bounds  page relative bounds, copied if a new task is created
+     * @param preview render a low resolution preview before the part, if a new task is created
+     */
+    void addRenderingTask(long key, int page, float width, float height, RectF bounds, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering,
+                          boolean visible, float priority, boolean preview) {
+        RenderingHandler worker;
+        synchronized (lock) {
+            if (scheduler.keep(key, width, height, bounds, cacheOrder, visible, priority)) {
+                return;
+            }
+            RenderingTask task = new RenderingTask(width, height, new RectF(bounds), page, thumbnail, cacheOrder, bestQuality, annotationRendering);
+            task.key = key;
+            task.visible = visible;
+            task.priority = priority;
+            task.preview = preview;
+            if (activeWorkers == 0 && scheduler.isEmpty()) {
+                burstStartNanos = System.nanoTime();
+            }
+            scheduler.add(task);
+            worker = workers[nextWorker];
+            nextWorker = (nextWorker + 1) % workers.length;
+        }
+        worker.sendEmptyMessage(RenderingHandler.MSG_RENDER_TASK);
+    }
+
+    /**
+     * Take the next task to render. Every non null task must be followed
+     * by a call to {@link #taskFinished(RenderingTask, boolean)}
+     */
+    RenderingTask pollTask() {
+        synchronized (lock) {
+            RenderingTask task = scheduler.poll();
+            if (task != null) {
+                activeWorkers++;
+            }
+            return task;
+        }
+    }
+
+    void taskFinished(RenderingTask task, boolean rendered) {
+        RenderingHandler worker = null;
+        synchronized (lock) {
+            scheduler.finish(task);
+            activeWorkers--;
+            if (rendered) {
+                burstTiles++;
+            }
+            if (task.abandoned) {
+                abandonedTasks++;
+                // requested again after the worker stopped it
+                if (running && scheduler.requeue(task)) {
+                    worker = workers[nextWorker];
+                    nextWorker = (nextWorker + 1) % workers.length;
+                }
+            }
+            if (rendered && task.preview && running) {
+                // the full part follows its preview
+                task.preview = false;
+                if (scheduler.requeue(task)) {
+                    worker = workers[nextWorker];
+                    nextWorker = (nextWorker + 1) % workers.length;
+                }
+            }
+            if (activeWorkers == 0 && scheduler.isEmpty() && burstTiles > 0) {
+                float seconds = (System.nanoTime() - burstStartNanos) / 1e9f;
+                lastTilesPerSecond = seconds > 0 ? burstTiles / seconds : 0;
+                if (Constants.DEBUG_MODE) {
+                    Log.d(TAG, "Rendered " + burstTiles + " parts in " + Math.round(seconds * 1000) + " ms on "
+                            + workers.length + " threads (" + Math.round(lastTilesPerSecond) + " parts/s), abandoned "
+                            + abandonedTasks + " tasks in total, " + discardedParts + " after rendering ("
+                            + wastedNanos / 1000000 + " ms wasted)");
+                }
+                burstTiles = 0;
+            }
+        }
+        if (worker != null) {
+            worker.sendEmptyMessage(RenderingHandler.MSG_RENDER_TASK);
+        }
+    }
+
+    /** Record a part rendered for a task which was cancelled meanwhile, its bitmap is dropped */
+    void partDiscarded(long renderNanos) {
+        synchronized (lock) {
+            discardedParts++;
+            wastedNanos += renderNanos;
+        }
+    }
+
+    /** Cancel pending tasks and tasks being rendered of given pages, see {@link RenderScheduler#cancelPages(boolean[])} */
+    void cancelPages(boolean[] pages) {
+        synchronized (lock) {
+            scheduler.cancelPages(pages);
+        }
+    }
+
+    /** Remove all pending tasks, tasks being rendered at the moment are cancelled */
+    void cancelAll() {
+        synchronized (lock) {
+            scheduler.clear();
+        }
+        for (RenderingHandler worker : workers) {
+            worker.removeMessages(RenderingHandler.MSG_RENDER_TASK);
+        }
+    }
+
+    int getKeptTasks() {
+        synchronized (lock) {
+            return scheduler.getKeptTasks();
+        }
+    }
+
+    int getCancelledTasks() {
+        synchronized (lock) {
+            return scheduler.getCancelledTasks();
+        }
+    }
+
+    /** Tasks being rendered which were cancelled by the last pass */
+    int getCancelledInProgressTasks() {
+        synchronized (lock) {
+            return scheduler.getCancelledInProgressTasks();
+        }
+    }
+
+    int getAddedTasks() {
+        synchronized (lock) {
+            return scheduler.getAddedTasks();
+        }
+    }
+
+    /** Tasks stopped by workers because they were cancelled, including discarded parts */
+    int getAbandonedTasks() {
+        synchronized (lock) {
+            return abandonedTasks;
+        }
+    }
+
+    /** Parts which were rendered but dropped because their task was cancelled meanwhile */
+    int getDiscardedParts() {
+        synchronized (lock) {
+            return discardedParts;
+        }
+    }
+
+    /** Time spent rendering discarded parts, in milliseconds */
+    long getWastedRenderMillis() {
+        synchronized (lock) {
+            return wastedNanos / 1000000;
+        }
+    }
+
+    /** Rendering throughput measured from the last time the pool went from idle to idle again */
+    float getLastTilesPerSecond() {
+        synchronized (lock) {
+            return lastTilesPerSecond;
+        }
+    }
+
+    int getThreadsCount() {
+        return workers.length;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    void start() {
+        running = true;
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    /** Stop all worker threads, the pool cannot be used afterwards */
+    void quit() {
+        stop();
+        cancelAll();
+        for (HandlerThread thread : threads) {
+            thread.quit();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+
+/**
+ * Description of a single page part waiting to be rendered by {@link RenderingPool}
+ */
+class RenderingTask {
+
+    float width, height;
+
+    RectF bounds;
+
+    int page;
+
+    boolean thumbnail;
+
+    int cacheOrder;
+
+    boolean bestQuality;
+
+    boolean annotationRendering;
+
+    /** True if the part intersects the view, not only the preloaded area around it */
+    boolean visible;
+
+    /** Distance from the center of the view, weighted by scroll direction. Lower is rendered sooner */
+    float priority;
+
+    /** Order in which the task was scheduled, set by {@link RenderScheduler} */
+    long sequence;
+
+    /** Identity of the part, see {@link com.github.barteksc.pdfviewer.util.TileKey} */
+    long key;
+
+    /**
+     * True while a low resolution preview has to be rendered first. The task is scheduled again
+     * for the full part once its preview is rendered
+     */
+    boolean preview;
+
+    /** Last {@link PagesLoader} pass which requested this task */
+    int pass;
+
+    /**
+     * Set by {@link RenderScheduler} when the task is no longer requested while it is rendered,
+     * the worker then stops at the next check and drops the result
+     */
+    volatile boolean cancelled;
+
+    /** Set by the worker when it stopped the task because it was cancelled */
+    boolean abandoned;
+
+    /** Position in the {@link RenderScheduler} lane, -1 if not queued */
+    int heapIndex = -1;
+
+    RenderingTask(float width, float height, RectF bounds, int page, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
+        this.page = page;
+        this.width = width;
+        this.height = height;
+        this.bounds = bounds;
+        this.thumbnail = thumbnail;
+        this.cacheOrder = cacheOrder;
+        this.bestQuality = bestQuality;
+        this.annotationRendering = annotationRendering;
+    }
+}
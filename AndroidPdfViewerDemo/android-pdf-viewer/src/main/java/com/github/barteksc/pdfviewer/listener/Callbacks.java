@@ -27,6 +27,11 @@ public class Callbacks {
      */
     private OnLoadCompleteListener onLoadCompleteListener;
 
+    /**
+     * Call back object to call while the document is read from a stream
+     */
+    private OnLoadProgressListener onLoadProgressListener;
+
     /**
      * Call back object to call when document loading error occurs
      */
@@ -84,6 +89,20 @@ public class Callbacks {
         }
     }
 
+    public void setOnLoadProgress(OnLoadProgressListener onLoadProgressListener) {
+        this.onLoadProgressListener = onLoadProgressListener;
+    }
+
+    public boolean hasOnLoadProgress() {
+        return onLoadProgressListener != null;
+    }
+
+    public void callOnLoadProgress(long loadedBytes, long totalBytes) {
+        if (onLoadProgressListener != null) {
+            onLoadProgressListener.onLoadProgress(loadedBytes, totalBytes);
+        }
+    }
+
     public void setOnError(OnErrorListener onErrorListener) {
         this.onErrorListener = onErrorListener;
     }
@@ -0,0 +1,31 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.listener;
+
+/**
+ * Implement this interface to receive progress of reading a document from a stream,
+ * before the document is decoded
+ */
+public interface OnLoadProgressListener {
+
+    /**
+     * Called periodically while the document is read
+     *
+     * @param loadedBytes number of bytes read so far
+     * @param totalBytes  length of the document or -1 if it is not known
+     */
+    void onLoadProgress(long loadedBytes, long totalBytes);
+}
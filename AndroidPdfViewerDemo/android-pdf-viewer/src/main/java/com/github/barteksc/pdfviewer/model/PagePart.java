@@ -20,6 +20,9 @@ import android.graphics.RectF;
 
 public class PagePart {
 
+    /** Identity of the part, see {@link com.github.barteksc.pdfviewer.util.TileKey} */
+    private long key;
+
     private int page;
 
     private Bitmap renderedBitmap;
@@ -30,13 +33,27 @@ public class PagePart {
 
     private int cacheOrder;
 
-    public PagePart(int page, Bitmap renderedBitmap, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder) {
+    /** True if the bitmap is a low resolution preview, replaced by the full part once it is rendered */
+    private boolean preview;
+
+    public PagePart(long key, int page, Bitmap renderedBitmap, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder) {
+        this(key, page, renderedBitmap, pageRelativeBounds, thumbnail, cacheOrder, false);
+    }
+
+    public PagePart(long key, int page, Bitmap renderedBitmap, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder,
+                    boolean preview) {
         super();
+        this.key = key;
         this.page = page;
         this.renderedBitmap = renderedBitmap;
         this.pageRelativeBounds = pageRelativeBounds;
         this.thumbnail = thumbnail;
         this.cacheOrder = cacheOrder;
+        this.preview = preview;
+    }
+
+    public long getKey() {
+        return key;
     }
 
     public int getCacheOrder() {
@@ -59,6 +76,10 @@ public class PagePart {
         return thumbnail;
     }
 
+    public boolean isPreview() {
+        return preview;
+    }
+
     public void setCacheOrder(int cacheOrder) {
         this.cacheOrder = cacheOrder;
     }
@@ -17,6 +17,7 @@ package com.github.barteksc.pdfviewer.source;
 
 
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.os.ParcelFileDescriptor;
 
 import com.github.barteksc.pdfviewer.util.FileUtils;
@@ -26,7 +27,7 @@ import com.shockwave.pdfium.PdfiumCore;
 import java.io.File;
 import java.io.IOException;
 
-public class AssetSource implements DocumentSource {
+public class AssetSource implements FingerprintSource {
 
     private final String assetName;
 
@@ -40,4 +41,16 @@ public class AssetSource implements DocumentSource {
         ParcelFileDescriptor pfd = ParcelFileDescriptor.open(f, ParcelFileDescriptor.MODE_READ_ONLY);
         return core.newDocument(pfd, password);
     }
+
+    /** Assets change only with the application, so its update time identifies them */
+    @Override
+    public String getFingerprint(Context context) {
+        try {
+            long updateTime = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            return "asset:" + assetName + ":" + updateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
 }
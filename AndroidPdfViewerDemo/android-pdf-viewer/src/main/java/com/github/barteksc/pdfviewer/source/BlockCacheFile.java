@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2018 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Sparse copy of a remote document, filled in blocks as they are downloaded. The data file has the length
+ * of the document, and a small index file records which blocks were written, so an interrupted download
+ * continues with the missing blocks when the document is opened again.
+ * <p>
+ * Not thread safe, a copy is filled by the thread loading the document, then by the thread reading it on demand.
+ */
+class BlockCacheFile {
+
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private static final int MAGIC = 0x50564243;
+
+    private final File data;
+
+    private final File index;
+
+    /** Validator of the remote content, e.g. its ETag, or null if the server has none */
+    private String version;
+
+    /** Length of the document, or -1 if it is not known */
+    private long length = -1;
+
+    /** Written blocks */
+    private boolean[] blocks = new boolean[0];
+
+    BlockCacheFile(File data, File index) {
+        this.data = data;
+        this.index = index;
+        if (!loadIndex()) {
+            version = null;
+            length = -1;
+            blocks = new boolean[0];
+        }
+    }
+
+    File getDataFile() {
+        return data;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    int getBlocksCount() {
+        return blocks.length;
+    }
+
+    boolean isComplete() {
+        return length >= 0 && nextMissingBlock(0) < 0;
+    }
+
+    /**
+     * @return first block from given one which was not written, or -1 if there is none
+     */
+    int nextMissingBlock(int from) {
+        for (int i = from; i < blocks.length; i++) {
+            if (!blocks[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return block after the run of missing blocks starting at given block
+     */
+    int missingRunEnd(int from) {
+        int i = from;
+        while (i < blocks.length && !blocks[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /** Number of bytes which are already written */
+    long getWrittenBytes() {
+        long written = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i]) {
+                written += getBlockEnd(i) - (long) i * BLOCK_SIZE;
+            }
+        }
+        return written;
+    }
+
+    /** Position after the last byte of the block */
+    long getBlockEnd(int block) {
+        long end = (long) (block + 1) * BLOCK_SIZE;
+        return length >= 0 ? Math.min(end, length) : end;
+    }
+
+    /**
+     * Drop written blocks and start a copy of another content
+     *
+     * @param length length of the content, or -1 if it is not known
+     */
+    void reset(String version, long length) throws IOException {
+        this.version = version;
+        this.length = length;
+        this.blocks = new boolean[length >= 0 ? (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE) : 0];
+        RandomAccessFile file = new RandomAccessFile(data, "rw");
+        try {
+            file.setLength(Math.max(length, 0));
+        } finally {
+            file.close();
+        }
+        saveIndex();
+    }
+
+    /** Record that the block was written to the data file */
+    void markWritten(int block) throws IOException {
+        blocks[block] = true;
+        saveIndex();
+    }
+
+    /** Record that content of unknown length was written completely */
+    void markComplete(long length) throws IOException {
+        this.length = length;
+        this.blocks = new boolean[(int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = true;
+        }
+        saveIndex();
+    }
+
+    private boolean loadIndex() {
+        if (!index.isFile() || !data.isFile()) {
+            return false;
+        }
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new FileInputStream(index));
+            if (inputStream.readInt() != MAGIC) {
+                return false;
+            }
+            version = inputStream.readBoolean() ? inputStream.readUTF() : null;
+            length = inputStream.readLong();
+            blocks = new boolean[inputStream.readInt()];
+            byte[] bits = new byte[(blocks.length + 7) / 8];
+            inputStream.readFully(bits);
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = (bits[i / 8] & (1 << (i % 8))) != 0;
+            }
+            return length < 0 || data.length() == length;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            close(inputStream);
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        byte[] bits = new byte[(blocks.length + 7) / 8];
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i]) {
+                bits[i / 8] |= 1 << (i % 8);
+            }
+        }
+
+        File tmp = new File(index.getPath() + ".tmp");
+        DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(tmp));
+        try {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeBoolean(version != null);
+            if (version != null) {
+                outputStream.writeUTF(version);
+            }
+            outputStream.writeLong(length);
+            outputStream.writeInt(blocks.length);
+            outputStream.write(bits);
+        } finally {
+            outputStream.close();
+        }
+        if (!tmp.renameTo(index)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + index);
+        }
+    }
+
+    private static void close(DataInputStream inputStream) {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -24,7 +24,7 @@ import com.shockwave.pdfium.PdfiumCore;
 import java.io.File;
 import java.io.IOException;
 
-public class FileSource implements DocumentSource {
+public class FileSource implements FingerprintSource {
 
     private File file;
 
@@ -37,4 +37,9 @@ public class FileSource implements DocumentSource {
         ParcelFileDescriptor pfd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
         return core.newDocument(pfd, password);
     }
+
+    @Override
+    public String getFingerprint(Context context) {
+        return "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
 }
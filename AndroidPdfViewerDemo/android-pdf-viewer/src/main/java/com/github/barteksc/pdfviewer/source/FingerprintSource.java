@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * Source which can identify its document, so data derived from it can be reused
+ * when the same document is opened again
+ */
+public interface FingerprintSource extends DocumentSource {
+
+    /**
+     * @return string which changes whenever content of the document may have changed,
+     * or null if the document cannot be identified
+     */
+    String getFingerprint(Context context) throws IOException;
+}
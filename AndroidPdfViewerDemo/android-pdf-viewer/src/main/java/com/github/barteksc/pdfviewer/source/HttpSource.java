@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2018 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.ProxyFileDescriptorCallback;
+import android.os.storage.StorageManager;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.listener.OnLoadProgressListener;
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.github.barteksc.pdfviewer.util.Util;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Document downloaded over HTTP with range requests into a sparse copy in the cache directory,
+ * see {@link BlockCacheFile}. A download interrupted by an error or cancellation continues with missing
+ * blocks on the next open, and a complete copy is reused while the server reports the same ETag or
+ * Last-Modified date, or used as is when the server cannot be reached.
+ * <p>
+ * Since Android 8.0 Pdfium reads the document through a proxy file descriptor, which downloads blocks
+ * when they are first read, so a linearized document shows its first page after a few blocks and pages
+ * that are never viewed are never downloaded. Older versions download the whole document before it is opened.
+ * <p>
+ * Servers without range support are handled by downloading the whole document. Copies of all documents
+ * are limited by {@link Constants.Cache#HTTP_CACHE_SIZE}, the least recently opened are deleted first.
+ * The application needs the INTERNET permission.
+ */
+public class HttpSource implements FingerprintSource, ProgressSource {
+
+    private static final String TAG = HttpSource.class.getSimpleName();
+
+    private static final String DIRECTORY = "pdfview-http";
+
+    private static final String DATA_SUFFIX = ".pdf";
+
+    private static final String INDEX_SUFFIX = ".blocks";
+
+    private static final int TIMEOUT = 15000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Blocks downloaded after the ones Pdfium reads, as it tends to read on */
+    private static final int READ_AHEAD_BLOCKS = 1;
+
+    private final URL url;
+
+    private OnLoadProgressListener progressListener;
+
+    private ProgressReporter progress;
+
+    /** Blocks read on demand are downloaded after the document is created, so they are not reported */
+    private final ProgressReporter readProgress = new ProgressReporter(null);
+
+    /** Validator and length of the downloaded content, known after the document is created */
+    private String contentVersion;
+
+    public HttpSource(URL url) {
+        this.url = url;
+    }
+
+    @Override
+    public void setOnLoadProgressListener(OnLoadProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public PdfDocument createDocument(Context context, PdfiumCore core, String password) throws IOException {
+        File directory = new File(context.getCacheDir(), DIRECTORY);
+        boolean onDemand = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+        BlockCacheFile cache = load(directory, Constants.Cache.HTTP_CACHE_SIZE, onDemand);
+        ParcelFileDescriptor pfd = cache.isComplete()
+                ? ParcelFileDescriptor.open(cache.getDataFile(), ParcelFileDescriptor.MODE_READ_ONLY)
+                : openOnDemand(context, cache);
+        try {
+            return core.newDocument(pfd, password);
+        } catch (IOException | RuntimeException e) {
+            // the descriptor is closed with the document only if it was created
+            pfd.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a descriptor of the incomplete copy, which downloads missing blocks as Pdfium reads them.
+     * Reads are served on a thread of their own, as they wait for the network.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private ParcelFileDescriptor openOnDemand(Context context, final BlockCacheFile cache) throws IOException {
+        StorageManager storageManager = (StorageManager) context.getSystemService(Context.STORAGE_SERVICE);
+        final HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        final RandomAccessFile file = new RandomAccessFile(cache.getDataFile(), "rw");
+        try {
+            return storageManager.openProxyFileDescriptor(ParcelFileDescriptor.MODE_READ_ONLY,
+                    new ProxyFileDescriptorCallback() {
+                        @Override
+                        public long onGetSize() {
+                            return cache.getLength();
+                        }
+
+                        @Override
+                        public int onRead(long offset, int size, byte[] data) throws ErrnoException {
+                            try {
+                                return read(cache, file, offset, size, data);
+                            } catch (IOException e) {
+                                Log.e(TAG, "Cannot read " + size + " bytes at " + offset + " of " + url, e);
+                                throw new ErrnoException("onRead", OsConstants.EIO);
+                            }
+                        }
+
+                        @Override
+                        public void onRelease() {
+                            close(file);
+                            thread.quitSafely();
+                        }
+                    }, new Handler(thread.getLooper()));
+        } catch (IOException | RuntimeException e) {
+            close(file);
+            thread.quitSafely();
+            throw e;
+        }
+    }
+
+    /**
+     * Read bytes of the document, downloading missing blocks they fall in first, together with
+     * {@link #READ_AHEAD_BLOCKS} following missing blocks. The copy must not change while Pdfium reads it,
+     * so a document changed on the server fails to be read instead of being replaced.
+     *
+     * @param file data file of the copy, open for writing
+     * @return number of bytes read, 0 at the end of the document
+     */
+    int read(BlockCacheFile cache, RandomAccessFile file, long offset, int size, byte[] data) throws IOException {
+        long length = cache.getLength();
+        if (offset >= length || size <= 0) {
+            return 0;
+        }
+        int count = (int) Math.min(size, length - offset);
+        int lastBlock = (int) ((offset + count - 1) / BlockCacheFile.BLOCK_SIZE);
+        int block = (int) (offset / BlockCacheFile.BLOCK_SIZE);
+        while ((block = cache.nextMissingBlock(block)) >= 0 && block <= lastBlock) {
+            int end = Math.min(cache.missingRunEnd(block), lastBlock + 1 + READ_AHEAD_BLOCKS);
+            fetch(cache, file, block, end, 0, readProgress, false);
+            block = end;
+        }
+        file.seek(offset);
+        file.readFully(data, 0, count);
+        return count;
+    }
+
+    /**
+     * Bring the copy of the document in the directory up to date, then delete least recently used
+     * copies of other documents above the size limit
+     *
+     * @param maxSize total size of copies in the directory, in bytes
+     */
+    BlockCacheFile load(File directory, long maxSize) throws IOException {
+        return load(directory, maxSize, false);
+    }
+
+    /**
+     * @param onDemand download only the first missing block, which validates the copy and tells the length
+     *                 of the document, other blocks are downloaded by {@link #read} when they are needed
+     */
+    BlockCacheFile load(File directory, long maxSize, boolean onDemand) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String name = Util.md5(url.toString());
+        BlockCacheFile cache = new BlockCacheFile(new File(directory, name + DATA_SUFFIX),
+                new File(directory, name + INDEX_SUFFIX));
+        progress = new ProgressReporter(progressListener);
+
+        if (cache.isComplete() && !isUpToDate(cache)) {
+            cache.reset(null, -1);
+        }
+        if (!cache.isComplete()) {
+            RandomAccessFile file = new RandomAccessFile(cache.getDataFile(), "rw");
+            try {
+                if (onDemand) {
+                    int first = Math.max(cache.nextMissingBlock(0), 0);
+                    progress.setLength(cache.getLength());
+                    long loaded = fetch(cache, file, first, first + 1, cache.getWrittenBytes(), progress, true);
+                    progress.report(loaded, true);
+                } else {
+                    download(cache, file);
+                }
+            } finally {
+                file.close();
+            }
+        }
+        contentVersion = cache.getVersion() + ":" + cache.getLength();
+
+        // modification time of the data file orders copies by use
+        cache.getDataFile().setLastModified(System.currentTimeMillis());
+        trim(directory, cache.getDataFile(), maxSize);
+        return cache;
+    }
+
+    /**
+     * Delete least recently used copies until all copies fit in the size limit,
+     * the given copy is always kept, even if it exceeds the limit alone
+     */
+    static void trim(File directory, File kept, long maxSize) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long modified1 = file1.lastModified();
+                long modified2 = file2.lastModified();
+                if (modified1 == modified2) {
+                    return 0;
+                }
+                return modified1 < modified2 ? -1 : 1;
+            }
+        });
+        for (File data : files) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            String name = data.getName();
+            if (!name.endsWith(DATA_SUFFIX) || data.equals(kept)) {
+                continue;
+            }
+            String base = name.substring(0, name.length() - DATA_SUFFIX.length());
+            File index = new File(directory, base + INDEX_SUFFIX);
+            File indexTmp = new File(directory, base + INDEX_SUFFIX + ".tmp");
+            long size = data.length() + index.length() + indexTmp.length();
+            // the index goes first, a copy without it is not used
+            index.delete();
+            indexTmp.delete();
+            data.delete();
+            totalSize -= size;
+        }
+    }
+
+    /** Known only after the document was created */
+    @Override
+    public String getFingerprint(Context context) {
+        return contentVersion != null ? "http:" + url + ":" + contentVersion : null;
+    }
+
+    /**
+     * @return true if the complete copy matches the remote document or the server cannot be reached
+     */
+    private boolean isUpToDate(BlockCacheFile cache) {
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection();
+            connection.setRequestMethod("HEAD");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return true;
+            }
+            String version = getVersion(connection);
+            long length = getContentLength(connection);
+            return (version == null || version.equals(cache.getVersion()))
+                    && (length < 0 || length == cache.getLength());
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot validate " + url + ", using the cached copy", e);
+            return true;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private void download(BlockCacheFile cache, RandomAccessFile file) throws IOException {
+        progress.setLength(cache.getLength());
+        long loaded = cache.getWrittenBytes();
+
+        while (!cache.isComplete()) {
+            int first = Math.max(cache.nextMissingBlock(0), 0);
+            loaded = fetch(cache, file, first, cache.missingRunEnd(first), loaded, progress, true);
+        }
+        progress.report(loaded, true);
+    }
+
+    /**
+     * Download blocks from the first one up to the end block with one range request. While the length
+     * of the document is not known, the first block is requested.
+     *
+     * @param loaded      number of bytes of the document written before
+     * @param allowChange replace the copy if the document has changed on the server, otherwise fail
+     * @return number of bytes of the document written after the request
+     */
+    private long fetch(BlockCacheFile cache, RandomAccessFile file, int first, int endBlock, long loaded,
+                       ProgressReporter progress, boolean allowChange) throws IOException {
+        long start = (long) first * BlockCacheFile.BLOCK_SIZE;
+        long end = cache.getLength() >= 0
+                ? cache.getBlockEnd(endBlock - 1)
+                : start + BlockCacheFile.BLOCK_SIZE;
+
+        HttpURLConnection connection = openConnection();
+        try {
+            connection.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+            if (cache.getVersion() != null) {
+                // the server sends the whole document if it has changed
+                connection.setRequestProperty("If-Range", cache.getVersion());
+            }
+            int code = connection.getResponseCode();
+            String version = getVersion(connection);
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                long length = getRangeLength(connection);
+                if (length != cache.getLength() || (version != null && !version.equals(cache.getVersion()))) {
+                    if (!allowChange) {
+                        throw new IOException(url + " has changed while it was open");
+                    }
+                    cache.reset(version, length);
+                    progress.setLength(length);
+                    loaded = 0;
+                }
+                end = Math.min(end, length);
+                return write(connection.getInputStream(), cache, file, start, end, loaded, progress);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // ranges are not supported or the document has changed
+                if (!allowChange) {
+                    throw new IOException(url + " has changed or no longer supports ranges while it was open");
+                }
+                long length = getContentLength(connection);
+                cache.reset(version, length);
+                progress.setLength(length);
+                long written = write(connection.getInputStream(), cache, file, 0,
+                        length >= 0 ? length : Long.MAX_VALUE, 0, progress);
+                if (length < 0) {
+                    cache.markComplete(written);
+                }
+                return written;
+            } else {
+                throw new IOException("Cannot download " + url + ", response code " + code);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Write the range from the stream to the copy, marking every complete block
+     *
+     * @param file   data file of the copy, open for writing
+     * @param start  position of the range, at the start of a block
+     * @param end    position after the range, or {@link Long#MAX_VALUE} to read until end of the stream
+     * @param loaded number of bytes of the document written before
+     * @return number of bytes of the document written after the range
+     */
+    private long write(InputStream inputStream, BlockCacheFile cache, RandomAccessFile file, long start, long end,
+                       long loaded, ProgressReporter progress) throws IOException {
+        try {
+            file.seek(start);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int block = (int) (start / BlockCacheFile.BLOCK_SIZE);
+            long position = start;
+            int read;
+            while (position < end
+                    && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1) {
+                file.write(buffer, 0, read);
+                position += read;
+                loaded += read;
+                while (block < cache.getBlocksCount() && cache.getBlockEnd(block) <= position) {
+                    cache.markWritten(block++);
+                }
+                progress.report(loaded, false);
+            }
+            if (position < end && end != Long.MAX_VALUE) {
+                throw new EOFException("Download of " + url + " ended at " + position + " of " + end);
+            }
+            return loaded;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void close(RandomAccessFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private HttpURLConnection openConnection() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        // lengths and ranges refer to the stored bytes, which must not be transparently decompressed
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    /** Strong ETag or Last-Modified date of the response, weak ETags cannot validate ranges */
+    private static String getVersion(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    private static long getContentLength(HttpURLConnection connection) {
+        String value = connection.getHeaderField("Content-Length");
+        try {
+            return value != null ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Complete length from a "Content-Range: bytes start-end/length" header */
+    private long getRangeLength(HttpURLConnection connection) throws IOException {
+        String value = connection.getHeaderField("Content-Range");
+        int slash = value != null ? value.lastIndexOf('/') : -1;
+        try {
+            if (slash >= 0) {
+                return Long.parseLong(value.substring(slash + 1).trim());
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new IOException("Unsupported Content-Range " + value + " from " + url);
+    }
+}
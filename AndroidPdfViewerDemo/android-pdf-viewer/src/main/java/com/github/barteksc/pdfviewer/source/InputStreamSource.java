@@ -16,24 +16,112 @@
 package com.github.barteksc.pdfviewer.source;
 
 import android.content.Context;
+import android.os.ParcelFileDescriptor;
 
-import com.github.barteksc.pdfviewer.util.Util;
+import com.github.barteksc.pdfviewer.listener.OnLoadProgressListener;
 import com.shockwave.pdfium.PdfDocument;
 import com.shockwave.pdfium.PdfiumCore;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
-public class InputStreamSource implements DocumentSource {
+/**
+ * Native code does not support Java streams, so the stream is read in advance. Streams of known length
+ * up to {@link #MAX_MEMORY_SIZE} are read into a single array of exact size, other streams are spooled
+ * to a temporary file in the cache directory, so heap use stays bounded by the copy buffer.
+ */
+public class InputStreamSource implements ProgressSource {
+
+    /** Length of the largest stream read into memory, in bytes */
+    private static final int MAX_MEMORY_SIZE = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private InputStream inputStream;
 
+    private final long length;
+
+    private OnLoadProgressListener progressListener;
+
+    private ProgressReporter progress;
+
     public InputStreamSource(InputStream inputStream) {
+        this(inputStream, -1);
+    }
+
+    /**
+     * @param length length of the stream in bytes, or -1 if it is not known
+     */
+    public InputStreamSource(InputStream inputStream, long length) {
         this.inputStream = inputStream;
+        this.length = length;
+    }
+
+    @Override
+    public void setOnLoadProgressListener(OnLoadProgressListener progressListener) {
+        this.progressListener = progressListener;
     }
 
     @Override
     public PdfDocument createDocument(Context context, PdfiumCore core, String password) throws IOException {
-        return core.newDocument(Util.toByteArray(inputStream), password);
+        progress = new ProgressReporter(progressListener);
+        progress.setLength(length);
+        try {
+            if (length >= 0 && length <= MAX_MEMORY_SIZE) {
+                return core.newDocument(readFully(), password);
+            }
+            return createDocumentFromFile(context, core, password);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private byte[] readFully() throws IOException {
+        byte[] bytes = new byte[(int) length];
+        int position = 0;
+        while (position < bytes.length) {
+            int read = inputStream.read(bytes, position, Math.min(BUFFER_SIZE, bytes.length - position));
+            if (read == -1) {
+                throw new EOFException("Stream is shorter than " + length + " bytes");
+            }
+            position += read;
+            progress.report(position, false);
+        }
+        return bytes;
+    }
+
+    private PdfDocument createDocumentFromFile(Context context, PdfiumCore core, String password) throws IOException {
+        File file = File.createTempFile("pdfview", ".pdf", context.getCacheDir());
+        try {
+            OutputStream outputStream = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long position = 0;
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                    position += read;
+                    progress.report(position, false);
+                }
+                progress.report(position, true);
+            } finally {
+                outputStream.close();
+            }
+            ParcelFileDescriptor pfd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            try {
+                return core.newDocument(pfd, password);
+            } catch (IOException | RuntimeException e) {
+                // the descriptor is closed with the document only if it was created
+                pfd.close();
+                throw e;
+            }
+        } finally {
+            // the opened descriptor keeps content of the file available until the document is closed
+            file.delete();
+        }
     }
 }
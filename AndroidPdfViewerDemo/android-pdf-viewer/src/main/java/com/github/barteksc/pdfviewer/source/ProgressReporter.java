@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import com.github.barteksc.pdfviewer.listener.OnLoadProgressListener;
+
+/**
+ * Limits how often progress is passed to {@link OnLoadProgressListener}
+ */
+class ProgressReporter {
+
+    /** Bytes read between reports when the length is not known */
+    private static final long UNKNOWN_LENGTH_STEP = 1024 * 1024;
+
+    private final OnLoadProgressListener listener;
+
+    private long length = -1;
+
+    /** Position of the last report */
+    private long reportedPosition = 0;
+
+    /**
+     * @param listener listener to call, may be null
+     */
+    ProgressReporter(OnLoadProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param length length of the document in bytes, or -1 if it is not known
+     */
+    void setLength(long length) {
+        this.length = length;
+    }
+
+    /**
+     * @param finished true to report the position even if it is close to the last one
+     */
+    void report(long position, boolean finished) {
+        if (listener == null || (finished && position == reportedPosition)) {
+            return;
+        }
+        long step = length > 0 ? Math.max(length / 100, 1) : UNKNOWN_LENGTH_STEP;
+        if (finished || Math.abs(position - reportedPosition) >= step || position == length) {
+            reportedPosition = position;
+            listener.onLoadProgress(position, length);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2018 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import com.github.barteksc.pdfviewer.listener.OnLoadProgressListener;
+
+/**
+ * Source which reads its document before it can be opened, and reports progress of reading
+ */
+public interface ProgressSource extends DocumentSource {
+
+    /**
+     * Listener is called on the thread loading the document, about every percent of the document,
+     * or every megabyte if its length is not known
+     */
+    void setOnLoadProgressListener(OnLoadProgressListener listener);
+}
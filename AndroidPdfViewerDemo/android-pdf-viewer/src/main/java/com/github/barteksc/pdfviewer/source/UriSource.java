@@ -16,15 +16,31 @@
 package com.github.barteksc.pdfviewer.source;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
+import android.util.Log;
 
 import com.shockwave.pdfium.PdfDocument;
 import com.shockwave.pdfium.PdfiumCore;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
-public class UriSource implements DocumentSource {
+public class UriSource implements FingerprintSource {
+
+    private static final String TAG = UriSource.class.getSimpleName();
+
+    /** DocumentsContract.Document.COLUMN_LAST_MODIFIED, which is also reported by other providers */
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    /** Bytes read from both ends of content whose modification time is not known */
+    private static final int DIGEST_BLOCK_SIZE = 64 * 1024;
 
     private Uri uri;
 
@@ -37,4 +53,81 @@ public class UriSource implements DocumentSource {
         ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
         return core.newDocument(pfd, password);
     }
+
+    /**
+     * Content is identified by its size and the modification time reported by the provider, or by a digest
+     * of its first and last blocks if the provider doesn't report the time. Content of unknown size, e.g. from
+     * a pipe, has no fingerprint, so it is never cached on disk.
+     */
+    @Override
+    public String getFingerprint(Context context) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) {
+            return null;
+        }
+        try {
+            long size = pfd.getStatSize();
+            if (size < 0) {
+                return null;
+            }
+            long lastModified = queryLastModified(context);
+            String version = lastModified > 0 ? String.valueOf(lastModified) : digestEnds(pfd, size);
+            return version != null ? "uri:" + uri + ":" + size + ":" + version : null;
+        } finally {
+            pfd.close();
+        }
+    }
+
+    /**
+     * @return modification time reported by the provider, or -1 if it doesn't report it
+     */
+    private long queryLastModified(Context context) {
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(uri, new String[]{COLUMN_LAST_MODIFIED}, null, null, null);
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // providers without the column may reject the projection
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return MD5 of the first and last block of the content, or null if the content cannot be read at random
+     */
+    private String digestEnds(ParcelFileDescriptor pfd, long size) {
+        // not closed, as that would close the descriptor owned by the caller
+        FileChannel channel = new FileInputStream(pfd.getFileDescriptor()).getChannel();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(DIGEST_BLOCK_SIZE, size));
+            digestRange(channel, 0, buffer, digest);
+            if (size > DIGEST_BLOCK_SIZE) {
+                digestRange(channel, size - buffer.capacity(), buffer, digest);
+            }
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.w(TAG, "Cannot read " + uri + ", it will not be cached", e);
+            return null;
+        }
+    }
+
+    private static void digestRange(FileChannel channel, long position, ByteBuffer buffer, MessageDigest digest)
+            throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Content ended at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+    }
 }
@@ -29,15 +29,53 @@ public class Constants {
      */
     public static float PART_SIZE = 256;
 
+    /**
+     * Between 0 and 1, scale of the preview rendered before a visible part in progressive mode (default 0.5,
+     * a quarter of the pixels), see {@link com.github.barteksc.pdfviewer.PDFView.Configurator#progressiveRendering(boolean)}
+     */
+    public static float PREVIEW_RATIO = 0.5f;
+
     /** Part of document above and below screen that should be preloaded, in dp */
     public static int PRELOAD_OFFSET = 20;
 
+    /**
+     * Default number of threads rendering page parts, one per core but no more than 4. Pdfium rasterizes
+     * one part at a time for all documents, so more threads overlap only the work around it,
+     * like reading parts from disk and preparing bitmaps
+     */
+    public static int RENDER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
     public static class Cache {
 
-        /** The size of the cache (number of bitmaps kept) */
-        public static int CACHE_SIZE = 120;
+        /**
+         * Part of the memory available to the application used for rendered parts and thumbnails (default 1/8),
+         * unless the size is set with {@link com.github.barteksc.pdfviewer.PDFView.Configurator#cacheSize(int)}
+         */
+        public static float CACHE_MEMORY_RATIO = 0.125f;
 
         public static int THUMBNAILS_CACHE_SIZE = 8;
+
+        /** Maximum size of bitmaps kept for reuse after being evicted from cache, in bytes */
+        public static int BITMAP_POOL_SIZE = 4 * 1024 * 1024;
+
+        /**
+         * Maximum size of rendered parts stored on disk for all documents, in bytes, used when enabled
+         * with {@link com.github.barteksc.pdfviewer.PDFView.Configurator#diskCache(boolean)}
+         */
+        public static long DISK_CACHE_SIZE = 64 * 1024 * 1024;
+
+        /**
+         * Maximum size of documents downloaded by {@link com.github.barteksc.pdfviewer.source.HttpSource}
+         * for all URLs, in bytes. The document being opened is kept even if it is bigger
+         */
+        public static long HTTP_CACHE_SIZE = 64 * 1024 * 1024;
+
+        /**
+         * Maximum number of native pages kept open by Pdfium (default 32, at least 2), least recently used
+         * pages far from the rendered one are closed and opened again when needed. Pages are closed through
+         * internals of pdfium-android, if they are not available the limit has no effect
+         */
+        public static int MAX_OPEN_PAGES = 32;
     }
 
     public static class Pinch {
@@ -16,36 +16,132 @@
 package com.github.barteksc.pdfviewer.util;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 public class FileUtils {
 
+    private static final String TAG = FileUtils.class.getSimpleName();
+
+    /** Bytes moved by a single channel transfer */
+    private static final long TRANSFER_SIZE = 256 * 1024;
+
     private FileUtils() {
         // Prevents instantiation
     }
 
+    /**
+     * Copy the asset to the cache directory. The copy is reused by next calls while it matches the asset,
+     * it is marked with the application update time, as assets change only with the application,
+     * and its length is compared with length of uncompressed assets.
+     */
     public static File fileFromAsset(Context context, String assetName) throws IOException {
         File outFile = new File(context.getCacheDir(), assetName + "-pdfview.pdf");
         if (assetName.contains("/")) {
             outFile.getParentFile().mkdirs();
         }
-        copy(context.getAssets().open(assetName), outFile);
-        return outFile;
+
+        // file systems may keep modification time only in seconds
+        long stamp = getUpdateTime(context) / 1000 * 1000;
+        AssetFileDescriptor assetFd = null;
+        try {
+            assetFd = context.getAssets().openFd(assetName);
+        } catch (FileNotFoundException e) {
+            // the asset is compressed, it can be read only as a stream
+        }
+
+        try {
+            long length = assetFd != null ? assetFd.getLength() : AssetFileDescriptor.UNKNOWN_LENGTH;
+            if (stamp > 0 && outFile.isFile() && outFile.lastModified() == stamp
+                    && (length == AssetFileDescriptor.UNKNOWN_LENGTH || outFile.length() == length)) {
+                return outFile;
+            }
+
+            // written aside and renamed, so an interrupted copy is never reused. Every call has its own
+            // temporary file, as the same asset may be copied by several callers at once
+            File tmpFile = File.createTempFile(outFile.getName(), ".tmp", outFile.getParentFile());
+            try {
+                if (assetFd != null && length != AssetFileDescriptor.UNKNOWN_LENGTH) {
+                    copy(assetFd.createInputStream(), assetFd.getStartOffset(), length, tmpFile);
+                } else {
+                    copy(context.getAssets().open(assetName), tmpFile);
+                }
+            } catch (IOException e) {
+                tmpFile.delete();
+                throw e;
+            }
+            if (stamp > 0 && !tmpFile.setLastModified(stamp)) {
+                Log.w(TAG, "Cannot set modification time of " + outFile + ", the asset will be copied on every call");
+            }
+            if (!tmpFile.renameTo(outFile)) {
+                tmpFile.delete();
+                throw new IOException("Cannot create " + outFile);
+            }
+            return outFile;
+        } finally {
+            if (assetFd != null) {
+                assetFd.close();
+            }
+        }
+    }
+
+    private static long getUpdateTime(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copy a region of the file, bytes are transferred by the file system without passing through the heap
+     */
+    private static void copy(FileInputStream inputStream, long offset, long length, File output) throws IOException {
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(output);
+            FileChannel in = inputStream.getChannel();
+            FileChannel out = outputStream.getChannel();
+            long position = 0;
+            while (position < length) {
+                long transferred = in.transferTo(offset + position, Math.min(TRANSFER_SIZE, length - position), out);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of " + output.getName());
+                }
+                position += transferred;
+            }
+        } finally {
+            try {
+                inputStream.close();
+            } finally {
+                if (outputStream != null) {
+                    outputStream.close();
+                }
+            }
+        }
     }
 
     public static void copy(InputStream inputStream, File output) throws IOException {
-        OutputStream outputStream = null;
+        FileOutputStream outputStream = null;
         try {
             outputStream = new FileOutputStream(output);
-            int read = 0;
-            byte[] bytes = new byte[1024];
-            while ((read = inputStream.read(bytes)) != -1) {
-                outputStream.write(bytes, 0, read);
+            ReadableByteChannel in = Channels.newChannel(inputStream);
+            FileChannel out = outputStream.getChannel();
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, position, TRANSFER_SIZE)) > 0) {
+                position += transferred;
             }
         } finally {
             try {
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.util;
+
+/**
+ * Identity of a page part packed into a single long, so parts can be compared and looked up
+ * without allocating objects.
+ * <p>
+ * Parts are rendered at quantised zoom levels, growing by a factor of &radic;2, and every level
+ * has its own grid of parts. From the most significant bits a key holds: page (24),
+ * level (8), row (16), column (16). Thumbnails cover the whole page and use a reserved level.
+ */
+public class TileKey {
+
+    private static final int CELL_BITS = 16;
+    private static final long CELL_MASK = (1 << CELL_BITS) - 1;
+    private static final int LEVEL_BITS = 8;
+    private static final long LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+
+    /** Stored level of zoom 1, so levels below it can be encoded too */
+    private static final int LEVEL_OFFSET = 64;
+
+    /** Highest level which can be stored, the stored value above it is used by thumbnails */
+    public static final int MAX_LEVEL = (int) LEVEL_MASK - LEVEL_OFFSET - 1;
+
+    public static final int MIN_LEVEL = -LEVEL_OFFSET;
+
+    private static final int THUMBNAIL_LEVEL = MAX_LEVEL + 1;
+
+    private TileKey() {
+        // Prevents instantiation
+    }
+
+    /**
+     * @param page  user page
+     * @param level zoom level, see {@link #getLevel(float)}
+     * @param row   row of the part in the grid of the level
+     * @param col   column of the part in the grid of the level
+     */
+    public static long part(int page, int level, int row, int col) {
+        return ((long) page << (LEVEL_BITS + 2 * CELL_BITS))
+                | (((level + LEVEL_OFFSET) & LEVEL_MASK) << (2 * CELL_BITS))
+                | ((row & CELL_MASK) << CELL_BITS)
+                | (col & CELL_MASK);
+    }
+
+    public static long thumbnail(int page) {
+        return part(page, THUMBNAIL_LEVEL, 0, 0);
+    }
+
+    public static int page(long key) {
+        return (int) (key >>> (LEVEL_BITS + 2 * CELL_BITS));
+    }
+
+    public static int level(long key) {
+        return (int) ((key >>> (2 * CELL_BITS)) & LEVEL_MASK) - LEVEL_OFFSET;
+    }
+
+    public static boolean isThumbnail(long key) {
+        return level(key) == THUMBNAIL_LEVEL;
+    }
+
+    /**
+     * Lowest level which is at least as sharp as the given zoom
+     */
+    public static int getLevel(float zoom) {
+        int level = (int) Math.ceil(2 * Math.log(zoom) / Math.log(2) - 1e-4);
+        return Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    /**
+     * Zoom at which parts of the level are rendered
+     */
+    public static float getLevelZoom(int level) {
+        return (float) Math.pow(2, level / 2.0);
+    }
+}
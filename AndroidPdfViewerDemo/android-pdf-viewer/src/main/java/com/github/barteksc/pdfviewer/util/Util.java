@@ -21,6 +21,8 @@ import android.util.TypedValue;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class Util {
     private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
@@ -38,4 +40,20 @@ public class Util {
         }
         return os.toByteArray();
     }
+
+    /** Hex encoded MD5 digest of the string, usable as a file name */
+    public static String md5(String string) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(string.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Both MD5 and UTF-8 are always available on Android
+            return Integer.toHexString(string.hashCode());
+        }
+    }
 }
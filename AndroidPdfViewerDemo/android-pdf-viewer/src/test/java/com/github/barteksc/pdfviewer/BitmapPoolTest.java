@@ -0,0 +1,77 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BitmapPoolTest {
+
+    @Test
+    public void reusedBitmapIsErased() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = pool.acquire(16, 16, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        pool.release(bitmap);
+
+        Bitmap reused = pool.acquire(16, 16, Bitmap.Config.ARGB_8888);
+
+        assertSame(bitmap, reused);
+        assertEquals(Color.TRANSPARENT, reused.getPixel(8, 8));
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    public void bitmapOfOtherSizeOrConfigIsNotReused() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = pool.acquire(16, 32, Bitmap.Config.RGB_565);
+        pool.release(bitmap);
+
+        assertNotSame(bitmap, pool.acquire(32, 16, Bitmap.Config.RGB_565));
+        assertNotSame(bitmap, pool.acquire(16, 32, Bitmap.Config.ARGB_8888));
+        assertSame(bitmap, pool.acquire(16, 32, Bitmap.Config.RGB_565));
+        assertEquals(3, pool.getMisses());
+    }
+
+    @Test
+    public void leastRecentlyReleasedAreRecycledAboveLimit() {
+        int size = 16 * 16 * 4;
+        BitmapPool pool = new BitmapPool(2 * size);
+        Bitmap first = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertTrue(first.isRecycled());
+        assertEquals(2 * size, pool.getSize());
+        assertSame(third, pool.acquire(16, 16, Bitmap.Config.ARGB_8888));
+        assertSame(second, pool.acquire(16, 16, Bitmap.Config.ARGB_8888));
+    }
+}
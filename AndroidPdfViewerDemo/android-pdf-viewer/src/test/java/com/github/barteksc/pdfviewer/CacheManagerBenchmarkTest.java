@@ -0,0 +1,238 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.github.barteksc.pdfviewer.util.TileKey;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times the lookups {@link PagesLoader} makes for every cell on every loader pass, with 120 and 1000 cached
+ * parts, against the linear scan of the cache they replaced. A loader pass asks for 64 cells, half of them
+ * cached, and the thumbnail of every page they are on. Cached cells are promoted to the active set, which
+ * becomes passive again after the pass.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CacheManagerBenchmarkTest {
+
+    private static final int PART_PIXELS = 4;
+
+    private static final int PART_SIZE = PART_PIXELS * PART_PIXELS * 4;
+
+    /** Cells of a page, 4 by 4 */
+    private static final int GRID = 4;
+
+    private static final int PASS_CELLS = 64;
+
+    private static final int PASSES = 2000;
+
+    private static final int RUNS = 7;
+
+    /** Order of the priority queues the cache was scanned in */
+    private static final Comparator<PagePart> CACHE_ORDER = new Comparator<PagePart>() {
+        @Override
+        public int compare(PagePart part1, PagePart part2) {
+            return part1.getCacheOrder() < part2.getCacheOrder() ? -1
+                    : part1.getCacheOrder() == part2.getCacheOrder() ? 0 : 1;
+        }
+    };
+
+    private int thumbnailsCacheSize;
+
+    @Before
+    public void setUp() {
+        thumbnailsCacheSize = Constants.Cache.THUMBNAILS_CACHE_SIZE;
+    }
+
+    @After
+    public void tearDown() {
+        Constants.Cache.THUMBNAILS_CACHE_SIZE = thumbnailsCacheSize;
+    }
+
+    @Test
+    public void lookupCostBarelyGrowsWithCacheSize() {
+        // warm up both paths before any of them is measured
+        timeIndexed(1000);
+        timeScanned(1000);
+
+        long indexed120 = timeIndexed(120);
+        long indexed1000 = timeIndexed(1000);
+        long scanned120 = timeScanned(120);
+        long scanned1000 = timeScanned(1000);
+        System.out.println("CacheManager loader pass, ns: indexed " + indexed120 + " at 120 parts, "
+                + indexed1000 + " at 1000 parts; linear scan " + scanned120 + " at 120 parts, "
+                + scanned1000 + " at 1000 parts");
+
+        // a binary search over 1000 keys takes 3 more steps than over 120, a scan takes 8 times as long
+        assertTrue("Indexed lookup grows with the cache: " + indexed120 + " ns -> " + indexed1000 + " ns",
+                indexed1000 < 3 * indexed120);
+        assertTrue("Indexed lookup is not faster than a scan of 1000 parts",
+                indexed1000 < scanned1000);
+    }
+
+    /**
+     * @return median time of a loader pass over a cache of the given number of parts and thumbnails
+     */
+    private static long timeIndexed(int parts) {
+        Constants.Cache.THUMBNAILS_CACHE_SIZE = parts;
+        CacheManager cacheManager = new CacheManager(new BitmapPool(0), 2 * parts * PART_SIZE);
+        for (int i = 0; i < parts; i++) {
+            cacheManager.cachePart(new PagePart(partKey(i), page(i), bitmap(), bounds(i), false, 0));
+            cacheManager.cacheThumbnail(new PagePart(TileKey.thumbnail(i), i, bitmap(), bounds(0), true, 0));
+        }
+        long[] partKeys = new long[PASS_CELLS];
+        long[] thumbnailKeys = new long[PASS_CELLS];
+        for (int i = 0; i < PASS_CELLS; i++) {
+            // every other cell is cached, spread over the whole cache
+            int cell = cell(i, parts);
+            partKeys[i] = partKey(cell);
+            thumbnailKeys[i] = TileKey.thumbnail(page(cell));
+        }
+
+        long[] times = new long[RUNS];
+        int found = 0;
+        for (int run = -1; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int pass = 0; pass < PASSES; pass++) {
+                for (int i = 0; i < PASS_CELLS; i++) {
+                    if (cacheManager.upPartIfContained(partKeys[i], pass)) {
+                        found++;
+                    }
+                    if (cacheManager.containsThumbnail(thumbnailKeys[i])) {
+                        found++;
+                    }
+                }
+                cacheManager.makeANewSet();
+            }
+            if (run >= 0) {
+                times[run] = (System.nanoTime() - start) / PASSES;
+            }
+        }
+        assertTrue(found > 0);
+        return median(times);
+    }
+
+    /**
+     * @return median time of a loader pass comparing a fake part to every cached part of priority queues,
+     * as the cache did before it was indexed
+     */
+    private static long timeScanned(int parts) {
+        PriorityQueue<PagePart> passiveCache = new PriorityQueue<>(parts, CACHE_ORDER);
+        PriorityQueue<PagePart> activeCache = new PriorityQueue<>(parts, CACHE_ORDER);
+        List<PagePart> thumbnails = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            passiveCache.add(new PagePart(partKey(i), page(i), null, bounds(i), false, 0));
+            thumbnails.add(new PagePart(TileKey.thumbnail(i), i, null, bounds(0), true, 0));
+        }
+        int[] cells = new int[PASS_CELLS];
+        for (int i = 0; i < PASS_CELLS; i++) {
+            cells[i] = cell(i, parts);
+        }
+
+        long[] times = new long[RUNS];
+        int found = 0;
+        for (int run = -1; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int pass = 0; pass < PASSES; pass++) {
+                for (int i = 0; i < PASS_CELLS; i++) {
+                    int cell = cells[i];
+                    PagePart fakePart = new PagePart(0, page(cell), null, bounds(cell), false, 0);
+                    PagePart part = find(passiveCache, fakePart);
+                    if (part != null) {
+                        passiveCache.remove(part);
+                        part.setCacheOrder(pass);
+                        activeCache.offer(part);
+                        found++;
+                    } else if (find(activeCache, fakePart) != null) {
+                        found++;
+                    }
+                    if (find(thumbnails, new PagePart(0, page(cell), null, bounds(0), true, 0)) != null) {
+                        found++;
+                    }
+                }
+                passiveCache.addAll(activeCache);
+                activeCache.clear();
+            }
+            if (run >= 0) {
+                times[run] = (System.nanoTime() - start) / PASSES;
+            }
+        }
+        assertTrue(found > 0);
+        return median(times);
+    }
+
+    private static PagePart find(Iterable<PagePart> parts, PagePart fakePart) {
+        for (PagePart part : parts) {
+            if (part.equals(fakePart)) {
+                return part;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return index of a cell of the pass, cached parts are numbered from 0
+     */
+    private static int cell(int passIndex, int parts) {
+        int cached = passIndex * (parts / PASS_CELLS);
+        return passIndex % 2 == 0 ? cached : parts + cached;
+    }
+
+    private static int page(int cell) {
+        return cell / (GRID * GRID);
+    }
+
+    private static long partKey(int cell) {
+        int index = cell % (GRID * GRID);
+        return TileKey.part(page(cell), 0, index / GRID, index % GRID);
+    }
+
+    private static RectF bounds(int cell) {
+        int index = cell % (GRID * GRID);
+        float size = 1f / GRID;
+        float left = index % GRID * size;
+        float top = index / GRID * size;
+        return new RectF(left, top, left + size, top + size);
+    }
+
+    private static Bitmap bitmap() {
+        return Bitmap.createBitmap(PART_PIXELS, PART_PIXELS, Bitmap.Config.ARGB_8888);
+    }
+
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.TileKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CacheManagerTest {
+
+    private static final int PART_PIXELS = 16;
+
+    /** Bytes of a single part */
+    private static final int PART_SIZE = PART_PIXELS * PART_PIXELS * 4;
+
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new BitmapPool(0), 3 * PART_SIZE);
+    }
+
+    @Test
+    public void sharpestLevelIsEvictedFirst() {
+        PagePart coarse = part(0, -1, 0, 0);
+        PagePart sharp = part(0, 2, 0, 1);
+        PagePart middle = part(0, 0, 0, 2);
+        cacheManager.cachePart(coarse);
+        cacheManager.cachePart(sharp);
+        cacheManager.cachePart(middle);
+
+        cacheManager.cachePart(part(0, 0, 0, 3));
+
+        assertFalse(cacheManager.containsPart(sharp.getKey()));
+        assertTrue(cacheManager.containsPart(coarse.getKey()));
+        assertTrue(cacheManager.containsPart(middle.getKey()));
+        assertEquals(3 * PART_SIZE, cacheManager.getSize());
+    }
+
+    @Test
+    public void lowestCacheOrderIsEvictedFirstWithinLevel() {
+        PagePart second = part(0, 0, 0, 0, 2);
+        PagePart first = part(0, 0, 0, 1, 1);
+        PagePart third = part(0, 0, 0, 2, 3);
+        cacheManager.cachePart(second);
+        cacheManager.cachePart(first);
+        cacheManager.cachePart(third);
+
+        cacheManager.cachePart(part(0, 0, 0, 3, 4));
+
+        assertFalse(cacheManager.containsPart(first.getKey()));
+        assertTrue(cacheManager.containsPart(second.getKey()));
+        assertTrue(cacheManager.containsPart(third.getKey()));
+    }
+
+    @Test
+    public void passivePartsAreEvictedBeforeActiveOnes() {
+        PagePart passiveCoarse = part(0, -2, 0, 0);
+        PagePart passiveKept = part(0, -2, 0, 1);
+        cacheManager.cachePart(passiveCoarse);
+        cacheManager.cachePart(passiveKept);
+        cacheManager.makeANewSet();
+        assertTrue(cacheManager.upPartIfContained(passiveKept.getKey(), 0));
+        PagePart activeSharp = part(0, 3, 0, 2);
+        cacheManager.cachePart(activeSharp);
+
+        cacheManager.cachePart(part(0, 3, 0, 3));
+
+        // the passive part goes first, even though the active one is sharper
+        assertFalse(cacheManager.containsPart(passiveCoarse.getKey()));
+        assertTrue(cacheManager.containsPart(passiveKept.getKey()));
+        assertTrue(cacheManager.containsPart(activeSharp.getKey()));
+    }
+
+    @Test
+    public void fullPartReplacesItsPreview() {
+        long key = TileKey.part(0, 0, 0, 0);
+        cacheManager.cachePart(new PagePart(key, 0, bitmap(), new RectF(0, 0, 1, 1), false, 0, true));
+        assertTrue(cacheManager.containsPart(key));
+        assertFalse(cacheManager.upPartIfContained(key, 0));
+
+        PagePart full = new PagePart(key, 0, bitmap(), new RectF(0, 0, 1, 1), false, 0);
+        cacheManager.cachePart(full);
+
+        assertTrue(cacheManager.upPartIfContained(key, 0));
+        assertEquals(1, cacheManager.getPageParts(0).size());
+        assertSame(full, cacheManager.getPageParts(0).get(0));
+        assertEquals(PART_SIZE, cacheManager.getSize());
+    }
+
+    @Test
+    public void pagePartsAreOrderedForDrawing() {
+        cacheManager = new CacheManager(new BitmapPool(0), 10 * PART_SIZE);
+        cacheManager.cachePart(part(1, 2, 0, 0));
+        cacheManager.cachePart(part(1, -1, 0, 0));
+        cacheManager.cachePart(part(1, 0, 0, 0));
+        cacheManager.cachePart(part(1, 2, 0, 1));
+        cacheManager.cachePart(part(2, 0, 0, 0));
+
+        List<PagePart> parts = cacheManager.getPageParts(1);
+
+        assertEquals(4, parts.size());
+        for (int i = 1; i < parts.size(); i++) {
+            assertTrue(TileKey.level(parts.get(i - 1).getKey()) <= TileKey.level(parts.get(i).getKey()));
+        }
+        assertEquals(1, cacheManager.getPageParts(2).size());
+        assertNull(cacheManager.getPageParts(3));
+    }
+
+    @Test
+    public void previewsAreDrawnBelowFullParts() {
+        cacheManager = new CacheManager(new BitmapPool(0), 10 * PART_SIZE);
+        PagePart sharpPreview = part(0, 3, 0, 0, 0, true);
+        PagePart coarseFull = part(0, 1, 0, 0, 0, false);
+        PagePart coarsePreview = part(0, 1, 0, 1, 0, true);
+        cacheManager.cachePart(sharpPreview);
+        cacheManager.cachePart(coarseFull);
+        cacheManager.cachePart(coarsePreview);
+
+        List<PagePart> parts = cacheManager.getPageParts(0);
+
+        assertSame(coarsePreview, parts.get(0));
+        assertSame(sharpPreview, parts.get(1));
+        assertSame(coarseFull, parts.get(2));
+    }
+
+    @Test
+    public void cellIsCoveredByFullPartsOfOneLevel() {
+        cacheManager = new CacheManager(new BitmapPool(0), 10 * PART_SIZE);
+        RectF cell = new RectF(0.4f, 0.4f, 0.6f, 0.6f);
+        cacheManager.cachePart(part(0, 0, 0, 0, new RectF(0, 0, 0.5f, 0.5f), false));
+        cacheManager.cachePart(part(0, 0, 0, 1, new RectF(0.5f, 0, 1, 0.5f), false));
+        cacheManager.cachePart(part(0, 0, 1, 0, new RectF(0, 0.5f, 0.5f, 1), false));
+        assertFalse(cacheManager.isCoveredByFullParts(0, -2, 2, cell));
+
+        // a cell of another level doesn't fill the gap, as cells of levels are not aligned
+        cacheManager.cachePart(part(0, 1, 1, 1, new RectF(0.5f, 0.5f, 1, 1), false));
+        assertFalse(cacheManager.isCoveredByFullParts(0, -2, 2, cell));
+        // nor does a preview
+        cacheManager.cachePart(part(0, 0, 1, 1, new RectF(0.5f, 0.5f, 1, 1), true));
+        assertFalse(cacheManager.isCoveredByFullParts(0, -2, 2, cell));
+
+        cacheManager.cachePart(part(0, 0, 1, 1, new RectF(0.5f, 0.5f, 1, 1), false));
+        assertTrue(cacheManager.isCoveredByFullParts(0, -2, 2, cell));
+        // parts outside the range of levels don't count
+        assertFalse(cacheManager.isCoveredByFullParts(0, 1, 2, cell));
+        assertFalse(cacheManager.isCoveredByFullParts(0, -2, 0, cell));
+        assertFalse(cacheManager.isCoveredByFullParts(1, -2, 2, cell));
+    }
+
+    @Test
+    public void evictedPartsLeaveDrawLists() {
+        PagePart sharp = part(0, 4, 0, 0);
+        cacheManager.cachePart(sharp);
+        cacheManager.cachePart(part(0, 0, 0, 1));
+        cacheManager.cachePart(part(0, 0, 0, 2));
+
+        cacheManager.cachePart(part(1, 0, 0, 0));
+
+        for (PagePart part : cacheManager.getPageParts(0)) {
+            assertFalse(part == sharp);
+        }
+        assertEquals(2, cacheManager.getPageParts(0).size());
+    }
+
+    @Test
+    public void removePagePartsKeepsOtherPages() {
+        cacheManager.cachePart(part(0, 0, 0, 0));
+        cacheManager.cachePart(part(0, 1, 0, 0));
+        PagePart other = part(1, 0, 0, 0);
+        cacheManager.cachePart(other);
+
+        cacheManager.removePageParts(0);
+
+        assertNull(cacheManager.getPageParts(0));
+        assertTrue(cacheManager.containsPart(other.getKey()));
+        assertEquals(PART_SIZE, cacheManager.getSize());
+    }
+
+    private static PagePart part(int page, int level, int row, int col) {
+        return part(page, level, row, col, 0);
+    }
+
+    private static PagePart part(int page, int level, int row, int col, int cacheOrder) {
+        return new PagePart(TileKey.part(page, level, row, col), page, bitmap(),
+                new RectF(0, 0, 1, 1), false, cacheOrder);
+    }
+
+    private static PagePart part(int page, int level, int row, int col, int cacheOrder, boolean preview) {
+        return part(page, level, row, col, new RectF(0, 0, 1, 1), preview, cacheOrder);
+    }
+
+    private static PagePart part(int page, int level, int row, int col, RectF bounds, boolean preview) {
+        return part(page, level, row, col, bounds, preview, 0);
+    }
+
+    private static PagePart part(int page, int level, int row, int col, RectF bounds, boolean preview,
+                                 int cacheOrder) {
+        return new PagePart(TileKey.part(page, level, row, col), page, bitmap(), bounds, false, cacheOrder, preview);
+    }
+
+    private static Bitmap bitmap() {
+        return Bitmap.createBitmap(PART_PIXELS, PART_PIXELS, Bitmap.Config.ARGB_8888);
+    }
+}
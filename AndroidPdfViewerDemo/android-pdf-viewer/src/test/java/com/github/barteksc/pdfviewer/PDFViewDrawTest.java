@@ -0,0 +1,199 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.DrawFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.listener.OnDrawListener;
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.FitPolicy;
+import com.github.barteksc.pdfviewer.util.TileKey;
+import com.shockwave.pdfium.util.Size;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Draws frames of a document laid out from stored page sizes, so Pdfium is not needed, and counts bytes
+ * allocated by the drawing thread
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PDFViewDrawTest {
+
+    private static final int VIEW_WIDTH = 1080;
+
+    private static final int VIEW_HEIGHT = 1920;
+
+    private static final int PAGES = 20;
+
+    /** Parts of a page, 2 by 2 */
+    private static final int GRID = 2;
+
+    private static final int WARM_UP_FRAMES = 200;
+
+    private static final int FRAMES = 100;
+
+    private static final int ROUNDS = 10;
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    private PDFView pdfView;
+
+    private CountingCanvas canvas;
+
+    private int layersDrawn;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        pdfView = new PDFView(RuntimeEnvironment.application, null);
+        pdfView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        pdfView.cacheManager.setMaxSize(64 * 1024 * 1024);
+        pdfView.pdfFile = createPdfFile();
+        setField("recycled", false);
+        setField("state", stateShown());
+        pdfView.callbacks.setOnDrawAll(new OnDrawListener() {
+            @Override
+            public void onLayerDrawn(Canvas canvas, float pageWidth, float pageHeight, int displayedPage) {
+                layersDrawn++;
+            }
+        });
+
+        // pages are 1440 pixels high, so the view shows page 0 and the top row of parts of page 1
+        for (int page = 0; page < 3; page++) {
+            pdfView.cacheManager.cacheThumbnail(new PagePart(TileKey.thumbnail(page), page,
+                    bitmap(64), new RectF(0, 0, 1, 1), true, 0));
+            for (int row = 0; row < GRID; row++) {
+                for (int col = 0; col < GRID; col++) {
+                    float size = 1f / GRID;
+                    RectF bounds = new RectF(col * size, row * size, (col + 1) * size, (row + 1) * size);
+                    pdfView.cacheManager.cachePart(new PagePart(TileKey.part(page, 0, row, col), page,
+                            bitmap(256), bounds, false, 0));
+                }
+            }
+        }
+        canvas = new CountingCanvas();
+    }
+
+    @Test
+    public void steadyStateFrameAllocatesNothing() {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            pdfView.onDraw(canvas);
+        }
+        canvas.bitmapsDrawn = 0;
+        layersDrawn = 0;
+
+        // allocations of a frame show in every round, the JIT compiler allocates in some of them only
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long overhead = allocatedBytes();
+            overhead = allocatedBytes() - overhead;
+            long before = allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) {
+                pdfView.onDraw(canvas);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - before - overhead);
+        }
+
+        assertEquals("Bytes allocated by " + FRAMES + " frames", 0, allocated);
+        // thumbnails of the two visible pages, parts of page 0 and the top row of parts of page 1
+        assertEquals(ROUNDS * FRAMES * (2 + GRID * GRID + GRID), canvas.bitmapsDrawn);
+        assertEquals(ROUNDS * FRAMES * 2, layersDrawn);
+        assertEquals(0, canvas.translation, 0.01f);
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static PdfFile createPdfFile() {
+        int[] widths = new int[PAGES];
+        int[] heights = new int[PAGES];
+        int[] userPages = new int[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            widths[i] = 600;
+            heights[i] = 800;
+            userPages[i] = i;
+        }
+        PageSizesCache pageSizesCache = new PageSizesCache(RuntimeEnvironment.application, "draw-test");
+        pageSizesCache.write(widths, heights);
+        return new PdfFile(null, null, FitPolicy.WIDTH, new Size(VIEW_WIDTH, VIEW_HEIGHT), userPages,
+                true, 0, false, false, 0, pageSizesCache);
+    }
+
+    private static Bitmap bitmap(int size) {
+        return Bitmap.createBitmap(size, size, Bitmap.Config.RGB_565);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object stateShown() throws NoSuchFieldException {
+        Class<? extends Enum> type = (Class<? extends Enum>) PDFView.class.getDeclaredField("state").getType();
+        return Enum.valueOf(type, "SHOWN");
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        Field field = PDFView.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(pdfView, value);
+    }
+
+    /** Counts drawn bitmaps, without the recording of the shadow canvas, which allocates */
+    private static class CountingCanvas extends Canvas {
+
+        private int bitmapsDrawn;
+
+        /** Sum of translations, back to 0 after every frame */
+        private float translation;
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+            bitmapsDrawn++;
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+            translation += dx + dy;
+        }
+
+        @Override
+        public void drawColor(int color) {
+        }
+
+        @Override
+        public void setDrawFilter(DrawFilter filter) {
+        }
+    }
+}
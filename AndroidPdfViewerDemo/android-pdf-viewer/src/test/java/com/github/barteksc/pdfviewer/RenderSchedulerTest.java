@@ -0,0 +1,263 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.util.TileKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RenderSchedulerTest {
+
+    private RenderScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new RenderScheduler();
+        scheduler.beginPass();
+    }
+
+    @Test
+    public void pollsVisibleThenPreviewThenLowestPriority() {
+        RenderingTask far = add(part(0, 0), false, 1f, false);
+        RenderingTask visibleFar = add(part(0, 1), true, 5f, false);
+        RenderingTask visibleNear = add(part(0, 2), true, 2f, false);
+        RenderingTask visiblePreview = add(part(0, 3), true, 9f, true);
+
+        assertSame(visiblePreview, scheduler.poll());
+        assertSame(visibleNear, scheduler.poll());
+        assertSame(visibleFar, scheduler.poll());
+        assertSame(far, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void equalTasksArePolledInInsertionOrder() {
+        RenderingTask first = add(part(0, 0), true, 1f, false);
+        RenderingTask second = add(part(0, 1), true, 1f, false);
+        RenderingTask third = add(part(0, 2), true, 1f, false);
+
+        assertSame(first, scheduler.poll());
+        assertSame(second, scheduler.poll());
+        assertSame(third, scheduler.poll());
+    }
+
+    @Test
+    public void thumbnailGoesBeforePartUnlessOnlyThePartIsVisible() {
+        RenderingTask part = add(part(0, 0), true, 1f, false);
+        RenderingTask hiddenThumbnail = addThumbnail(1, false, 0f);
+        RenderingTask visibleThumbnail = addThumbnail(2, true, 5f);
+
+        assertSame(visibleThumbnail, scheduler.poll());
+        assertSame(part, scheduler.poll());
+        assertSame(hiddenThumbnail, scheduler.poll());
+    }
+
+    @Test
+    public void heapPollsInPriorityOrder() {
+        Random random = new Random(42);
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            add(part(0, i), random.nextFloat() < 0.5f, random.nextFloat(), false);
+        }
+
+        boolean previousVisible = true;
+        float previous = -1;
+        int polled = 0;
+        RenderingTask task;
+        while ((task = scheduler.poll()) != null) {
+            if (task.visible != previousVisible) {
+                assertFalse(task.visible);
+                previousVisible = false;
+                previous = -1;
+            }
+            assertTrue(task.priority >= previous);
+            previous = task.priority;
+            polled++;
+        }
+        assertEquals(count, polled);
+    }
+
+    @Test
+    public void passIsAppliedAsDiff() {
+        RenderingTask kept = add(part(0, 0), true, 3f, false);
+        add(part(0, 1), true, 1f, false);
+        add(part(0, 2), true, 2f, false);
+        scheduler.endPass();
+
+        scheduler.beginPass();
+        assertTrue(keep(kept.key, true, 3f));
+        RenderingTask added = add(part(0, 3), true, 4f, false);
+        scheduler.endPass();
+
+        assertEquals(1, scheduler.getKeptTasks());
+        assertEquals(2, scheduler.getCancelledTasks());
+        assertEquals(1, scheduler.getAddedTasks());
+        assertSame(kept, scheduler.poll());
+        assertSame(added, scheduler.poll());
+        assertNull(scheduler.poll());
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void keepReordersAndUpdatesTask() {
+        RenderingTask first = add(part(0, 0), true, 1f, false);
+        RenderingTask second = add(part(0, 1), true, 2f, false);
+        RectF bounds = new RectF(0.5f, 0.5f, 1f, 1f);
+
+        assertTrue(scheduler.keep(second.key, 300, 200, bounds, 7, true, 0f));
+
+        assertEquals(300f, second.width, 0f);
+        assertEquals(200f, second.height, 0f);
+        assertEquals(bounds, second.bounds);
+        assertEquals(7, second.cacheOrder);
+        assertSame(second, scheduler.poll());
+        assertSame(first, scheduler.poll());
+    }
+
+    @Test
+    public void keepOfUnknownTaskFails() {
+        assertFalse(keep(part(0, 0), true, 1f));
+    }
+
+    @Test
+    public void taskInProgressIsCancelledAndKeptAgain() {
+        RenderingTask task = add(part(0, 0), true, 1f, false);
+        scheduler.endPass();
+        assertSame(task, scheduler.poll());
+
+        scheduler.beginPass();
+        scheduler.endPass();
+        assertTrue(task.cancelled);
+        assertEquals(1, scheduler.getCancelledInProgressTasks());
+
+        scheduler.beginPass();
+        assertTrue(keep(task.key, true, 1f));
+        assertFalse(task.cancelled);
+        // a task in progress is not added again
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void requeueOnlyTasksOfCurrentPass() {
+        RenderingTask task = add(part(0, 0), true, 1f, true);
+        assertSame(task, scheduler.poll());
+        scheduler.finish(task);
+        task.preview = false;
+        assertTrue(scheduler.requeue(task));
+        assertSame(task, scheduler.poll());
+        scheduler.finish(task);
+
+        scheduler.beginPass();
+        assertFalse(scheduler.requeue(task));
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void cancelPagesKeepsThumbnailsAndOtherPages() {
+        add(part(0, 0), true, 1f, false);
+        RenderingTask otherPage = add(part(1, 0), true, 2f, false);
+        RenderingTask thumbnail = addThumbnail(0, true, 3f);
+        RenderingTask inProgress = add(part(0, 1), true, 0f, false);
+        assertSame(thumbnail, scheduler.poll());
+        assertSame(inProgress, scheduler.poll());
+
+        boolean[] pages = new boolean[]{true, false};
+        scheduler.cancelPages(pages);
+
+        assertTrue(inProgress.cancelled);
+        assertSame(otherPage, scheduler.poll());
+        assertNull(scheduler.poll());
+
+        // the key of the forgotten task is free for a task of the new grid
+        assertFalse(keep(inProgress.key, true, 0f));
+        RenderingTask replacement = add(inProgress.key, true, 0f, false);
+        scheduler.finish(inProgress);
+        assertFalse(scheduler.requeue(inProgress));
+        assertSame(replacement, scheduler.poll());
+    }
+
+    @Test
+    public void heapPollsInPriorityOrderAfterUpdates() {
+        Random random = new Random(42);
+        int count = 2000;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = part(0, i);
+            add(keys[i], true, random.nextFloat(), false);
+        }
+        scheduler.endPass();
+
+        scheduler.beginPass();
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(keep(keys[i], true, random.nextFloat()));
+        }
+        scheduler.endPass();
+
+        assertEquals(count / 2, scheduler.getCancelledTasks());
+        float previous = -1;
+        int polled = 0;
+        RenderingTask task;
+        while ((task = scheduler.poll()) != null) {
+            assertTrue(task.priority >= previous);
+            previous = task.priority;
+            polled++;
+        }
+        assertEquals(count / 2, polled);
+    }
+
+    private static long part(int page, int col) {
+        return TileKey.part(page, 0, 0, col);
+    }
+
+    private boolean keep(long key, boolean visible, float priority) {
+        return scheduler.keep(key, 256, 256, new RectF(0, 0, 1, 1), 0, visible, priority);
+    }
+
+    private RenderingTask add(long key, boolean visible, float priority, boolean preview) {
+        RenderingTask task = new RenderingTask(256, 256, new RectF(0, 0, 1, 1), TileKey.page(key), false, 0, false, false);
+        task.key = key;
+        task.visible = visible;
+        task.priority = priority;
+        task.preview = preview;
+        scheduler.add(task);
+        return task;
+    }
+
+    private RenderingTask addThumbnail(int page, boolean visible, float priority) {
+        RenderingTask task = new RenderingTask(64, 64, new RectF(0, 0, 1, 1), page, true, 0, false, false);
+        task.key = TileKey.thumbnail(page);
+        task.visible = visible;
+        task.priority = priority;
+        scheduler.add(task);
+        return task;
+    }
+}
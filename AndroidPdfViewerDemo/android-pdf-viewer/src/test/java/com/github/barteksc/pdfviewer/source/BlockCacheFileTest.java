@@ -0,0 +1,164 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.github.barteksc.pdfviewer.source.BlockCacheFile.BLOCK_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BlockCacheFileTest {
+
+    private File directory;
+
+    private File data;
+
+    private File index;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = TestFiles.createDirectory();
+        data = new File(directory, "document.pdf");
+        index = new File(directory, "document.blocks");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(directory);
+    }
+
+    @Test
+    public void newCopyIsEmpty() {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+
+        assertNull(cache.getVersion());
+        assertEquals(-1, cache.getLength());
+        assertEquals(0, cache.getBlocksCount());
+        assertFalse(cache.isComplete());
+    }
+
+    @Test
+    public void resetSizesDataAndBlocks() throws IOException {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+        long length = 3 * BLOCK_SIZE + 100;
+
+        cache.reset("\"v1\"", length);
+
+        assertEquals(length, data.length());
+        assertEquals(4, cache.getBlocksCount());
+        assertEquals(0, cache.nextMissingBlock(0));
+        assertEquals(4, cache.missingRunEnd(0));
+        assertEquals(length, cache.getBlockEnd(3));
+        assertEquals(0, cache.getWrittenBytes());
+    }
+
+    @Test
+    public void writtenBlocksAreTracked() throws IOException {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+        cache.reset("\"v1\"", 3 * BLOCK_SIZE + 100);
+
+        cache.markWritten(0);
+        cache.markWritten(3);
+
+        assertEquals(1, cache.nextMissingBlock(0));
+        assertEquals(3, cache.missingRunEnd(1));
+        assertEquals(-1, cache.nextMissingBlock(3));
+        assertEquals(BLOCK_SIZE + 100, cache.getWrittenBytes());
+        assertFalse(cache.isComplete());
+
+        cache.markWritten(1);
+        cache.markWritten(2);
+        assertTrue(cache.isComplete());
+    }
+
+    @Test
+    public void indexIsRestoredByNextInstance() throws IOException {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+        cache.reset("\"v1\"", 20 * BLOCK_SIZE);
+        for (int block = 0; block < 20; block += 3) {
+            cache.markWritten(block);
+        }
+
+        BlockCacheFile restored = new BlockCacheFile(data, index);
+
+        assertEquals("\"v1\"", restored.getVersion());
+        assertEquals(20 * BLOCK_SIZE, restored.getLength());
+        assertEquals(20, restored.getBlocksCount());
+        for (int block = 0; block < 20; block++) {
+            boolean written = block % 3 == 0;
+            assertEquals(written, restored.nextMissingBlock(block) != block);
+        }
+        assertEquals(cache.getWrittenBytes(), restored.getWrittenBytes());
+    }
+
+    @Test
+    public void indexNotMatchingDataIsDropped() throws IOException {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+        cache.reset("\"v1\"", 2 * BLOCK_SIZE);
+        cache.markWritten(0);
+        // data changed behind the index
+        FileOutputStream outputStream = new FileOutputStream(data, true);
+        outputStream.write(1);
+        outputStream.close();
+
+        BlockCacheFile restored = new BlockCacheFile(data, index);
+
+        assertNull(restored.getVersion());
+        assertEquals(-1, restored.getLength());
+        assertEquals(0, restored.getBlocksCount());
+    }
+
+    @Test
+    public void corruptedIndexIsDropped() throws IOException {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+        cache.reset("\"v1\"", 2 * BLOCK_SIZE);
+        FileOutputStream outputStream = new FileOutputStream(index);
+        outputStream.write(new byte[]{1, 2, 3});
+        outputStream.close();
+
+        BlockCacheFile restored = new BlockCacheFile(data, index);
+
+        assertEquals(-1, restored.getLength());
+        assertFalse(restored.isComplete());
+    }
+
+    @Test
+    public void contentOfUnknownLengthIsCompletedAtOnce() throws IOException {
+        BlockCacheFile cache = new BlockCacheFile(data, index);
+        cache.reset(null, -1);
+        assertEquals(0, cache.getBlocksCount());
+
+        cache.markComplete(BLOCK_SIZE + 1);
+
+        assertEquals(2, cache.getBlocksCount());
+        assertTrue(cache.isComplete());
+        assertEquals(BLOCK_SIZE + 1, cache.getWrittenBytes());
+    }
+}
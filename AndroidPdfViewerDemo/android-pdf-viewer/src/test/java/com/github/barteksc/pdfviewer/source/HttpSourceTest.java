@@ -0,0 +1,367 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.github.barteksc.pdfviewer.source.BlockCacheFile.BLOCK_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Downloads from an in-process server supporting HEAD, Range and If-Range requests
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class HttpSourceTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private HttpServer server;
+
+    private StubHandler handler;
+
+    private URL url;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new StubHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/document.pdf", handler);
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/document.pdf");
+        directory = TestFiles.createDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        TestFiles.delete(directory);
+    }
+
+    @Test
+    public void downloadsWithRangeRequest() throws IOException {
+        handler.setContent(content(3 * BLOCK_SIZE + 1000, 1), "\"v1\"");
+
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        assertTrue(cache.isComplete());
+        assertEquals("\"v1\"", cache.getVersion());
+        assertArrayEquals(handler.content, TestFiles.read(cache.getDataFile()));
+        // the first block tells the length, the rest comes in one request
+        assertEquals(2, handler.ranges.size());
+        assertEquals("bytes=0-" + (BLOCK_SIZE - 1), handler.ranges.get(0));
+        assertEquals("bytes=" + BLOCK_SIZE + "-" + (handler.content.length - 1), handler.ranges.get(1));
+    }
+
+    @Test
+    public void resumesAfterPartialResponse() throws IOException {
+        byte[] content = content(4 * BLOCK_SIZE + 1000, 2);
+        handler.setContent(content, "\"v1\"");
+        handler.truncateAfter = 2 * BLOCK_SIZE + 10;
+        try {
+            new HttpSource(url).load(directory, NO_LIMIT);
+            fail("Truncated download must fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        handler.truncateAfter = -1;
+        handler.ranges.clear();
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        assertTrue(cache.isComplete());
+        assertArrayEquals(content, TestFiles.read(cache.getDataFile()));
+        // the first two blocks were written before the response ended
+        assertEquals("bytes=" + 2 * BLOCK_SIZE + "-" + (content.length - 1), handler.ranges.get(0));
+        assertEquals("\"v1\"", handler.ifRanges.get(0));
+    }
+
+    @Test
+    public void completeCopyIsReusedWhileUpToDate() throws IOException {
+        handler.setContent(content(BLOCK_SIZE + 1, 3), "\"v1\"");
+        new HttpSource(url).load(directory, NO_LIMIT);
+        handler.ranges.clear();
+
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        assertTrue(cache.isComplete());
+        assertTrue(handler.ranges.isEmpty());
+        assertEquals(1, handler.heads);
+    }
+
+    @Test
+    public void copyIsResetWhenETagChanges() throws IOException {
+        handler.setContent(content(2 * BLOCK_SIZE, 4), "\"v1\"");
+        new HttpSource(url).load(directory, NO_LIMIT);
+
+        byte[] changed = content(2 * BLOCK_SIZE, 5);
+        handler.setContent(changed, "\"v2\"");
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        assertEquals("\"v2\"", cache.getVersion());
+        assertArrayEquals(changed, TestFiles.read(cache.getDataFile()));
+    }
+
+    @Test
+    public void partialCopyIsResetWhenETagChanges() throws IOException {
+        handler.setContent(content(3 * BLOCK_SIZE, 6), "\"v1\"");
+        handler.truncateAfter = BLOCK_SIZE + 10;
+        try {
+            new HttpSource(url).load(directory, NO_LIMIT);
+            fail("Truncated download must fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        handler.truncateAfter = -1;
+        byte[] changed = content(3 * BLOCK_SIZE, 7);
+        handler.setContent(changed, "\"v2\"");
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        // If-Range doesn't match, so the whole new document is sent
+        assertEquals("\"v2\"", cache.getVersion());
+        assertArrayEquals(changed, TestFiles.read(cache.getDataFile()));
+    }
+
+    @Test
+    public void copyIsResetWhenLengthChanges() throws IOException {
+        handler.setContent(content(BLOCK_SIZE + 10, 8), null);
+        new HttpSource(url).load(directory, NO_LIMIT);
+
+        byte[] longer = content(2 * BLOCK_SIZE + 10, 9);
+        handler.setContent(longer, null);
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        assertEquals(longer.length, cache.getLength());
+        assertArrayEquals(longer, TestFiles.read(cache.getDataFile()));
+    }
+
+    @Test
+    public void onDemandLoadDownloadsFirstBlockOnly() throws IOException {
+        handler.setContent(content(8 * BLOCK_SIZE + 1000, 13), "\"v1\"");
+
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT, true);
+
+        assertFalse(cache.isComplete());
+        assertEquals(handler.content.length, cache.getLength());
+        assertEquals(1, handler.ranges.size());
+        assertEquals("bytes=0-" + (BLOCK_SIZE - 1), handler.ranges.get(0));
+    }
+
+    @Test
+    public void readDownloadsOnlyMissingBlocksWithReadAhead() throws IOException {
+        byte[] content = content(8 * BLOCK_SIZE + 1000, 14);
+        handler.setContent(content, "\"v1\"");
+        HttpSource source = new HttpSource(url);
+        BlockCacheFile cache = source.load(directory, NO_LIMIT, true);
+        handler.ranges.clear();
+
+        byte[] data = new byte[100];
+        RandomAccessFile file = new RandomAccessFile(cache.getDataFile(), "rw");
+        try {
+            long offset = 4L * BLOCK_SIZE + 10;
+            assertEquals(data.length, source.read(cache, file, offset, data.length, data));
+            assertArrayEquals(Arrays.copyOfRange(content, (int) offset, (int) offset + data.length), data);
+            // the block and the one after it
+            assertEquals(1, handler.ranges.size());
+            assertEquals("bytes=" + 4 * BLOCK_SIZE + "-" + (6 * BLOCK_SIZE - 1), handler.ranges.get(0));
+            assertEquals("\"v1\"", handler.ifRanges.get(handler.ifRanges.size() - 1));
+
+            // downloaded blocks are read from the copy
+            source.read(cache, file, 5L * BLOCK_SIZE, data.length, data);
+            assertEquals(1, handler.ranges.size());
+
+            // the end of the document
+            byte[] tail = new byte[BLOCK_SIZE];
+            assertEquals(1000, source.read(cache, file, 8L * BLOCK_SIZE, tail.length, tail));
+            assertEquals(0, source.read(cache, file, content.length, tail.length, tail));
+        } finally {
+            file.close();
+        }
+        assertFalse(cache.isComplete());
+    }
+
+    @Test
+    public void readFailsWhenDocumentChanges() throws IOException {
+        handler.setContent(content(4 * BLOCK_SIZE, 15), "\"v1\"");
+        HttpSource source = new HttpSource(url);
+        BlockCacheFile cache = source.load(directory, NO_LIMIT, true);
+
+        handler.setContent(content(4 * BLOCK_SIZE, 16), "\"v2\"");
+        byte[] data = new byte[100];
+        RandomAccessFile file = new RandomAccessFile(cache.getDataFile(), "rw");
+        try {
+            source.read(cache, file, 2L * BLOCK_SIZE, data.length, data);
+            fail("Changed document must not be read into the open copy");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            file.close();
+        }
+        assertEquals("\"v1\"", cache.getVersion());
+    }
+
+    @Test
+    public void serverWithoutRangesSendsWholeDocument() throws IOException {
+        byte[] content = content(2 * BLOCK_SIZE + 10, 10);
+        handler.setContent(content, "\"v1\"");
+        handler.supportsRanges = false;
+
+        BlockCacheFile cache = new HttpSource(url).load(directory, NO_LIMIT);
+
+        assertTrue(cache.isComplete());
+        assertArrayEquals(content, TestFiles.read(cache.getDataFile()));
+    }
+
+    @Test
+    public void leastRecentlyUsedCopiesAreDeleted() throws IOException {
+        File oldest = copy("oldest", 1000, 1000);
+        File old = copy("old", 1000, 2000);
+        handler.setContent(content(1500, 11), "\"v1\"");
+
+        BlockCacheFile cache = new HttpSource(url).load(directory, 1000 + 1500 + 200);
+
+        assertFalse(oldest.exists());
+        assertFalse(new File(directory, "oldest.blocks").exists());
+        assertTrue(old.exists());
+        assertTrue(cache.getDataFile().exists());
+    }
+
+    @Test
+    public void currentCopyIsKeptAboveLimit() throws IOException {
+        File old = copy("old", 1000, 1000);
+        handler.setContent(content(1500, 12), "\"v1\"");
+
+        BlockCacheFile cache = new HttpSource(url).load(directory, 100);
+
+        assertFalse(old.exists());
+        assertTrue(cache.isComplete());
+        assertTrue(cache.getDataFile().exists());
+    }
+
+    private File copy(String name, int length, long lastModified) throws IOException {
+        File data = new File(directory, name + ".pdf");
+        FileOutputStream outputStream = new FileOutputStream(data);
+        outputStream.write(new byte[length]);
+        outputStream.close();
+        File index = new File(directory, name + ".blocks");
+        new FileOutputStream(index).close();
+        assertTrue(data.setLastModified(lastModified));
+        return data;
+    }
+
+    private static byte[] content(int length, long seed) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static class StubHandler implements HttpHandler {
+
+        private volatile byte[] content;
+
+        private volatile String etag;
+
+        private volatile boolean supportsRanges = true;
+
+        /** Bytes sent before the response ends early, -1 to send complete responses */
+        private volatile int truncateAfter = -1;
+
+        private final List<String> ranges = new ArrayList<>();
+
+        private final List<String> ifRanges = new ArrayList<>();
+
+        private int heads = 0;
+
+        void setContent(byte[] content, String etag) {
+            this.content = content;
+            this.etag = etag;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (etag != null) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+                exchange.getResponseHeaders().set("Accept-Ranges", supportsRanges ? "bytes" : "none");
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    synchronized (this) {
+                        heads++;
+                    }
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                synchronized (this) {
+                    if (range != null) {
+                        ranges.add(range);
+                    }
+                    if (ifRange != null) {
+                        ifRanges.add(ifRange);
+                    }
+                }
+                boolean partial = supportsRanges && range != null && (ifRange == null || ifRange.equals(etag));
+                int start = 0;
+                int end = content.length;
+                if (partial) {
+                    String[] bounds = range.substring("bytes=".length()).split("-");
+                    start = Integer.parseInt(bounds[0]);
+                    end = Math.min(content.length, Integer.parseInt(bounds[1]) + 1);
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + start + "-" + (end - 1) + "/" + content.length);
+                }
+                int sent = truncateAfter >= 0 ? Math.min(end, truncateAfter) - start : end - start;
+                exchange.sendResponseHeaders(partial ? 206 : 200, sent);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(content, start, sent);
+                outputStream.close();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2018 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileKeyTest {
+
+    @Test
+    public void packsPageAndLevel() {
+        int[] pages = {0, 1, 1000, (1 << 24) - 1};
+        int[] levels = {TileKey.MIN_LEVEL, -7, -1, 0, 1, 7, TileKey.MAX_LEVEL};
+        for (int page : pages) {
+            for (int level : levels) {
+                long key = TileKey.part(page, level, 65535, 65535);
+                assertEquals(page, TileKey.page(key));
+                assertEquals(level, TileKey.level(key));
+                assertFalse(TileKey.isThumbnail(key));
+            }
+        }
+    }
+
+    @Test
+    public void negativeLevelsKeepOrder() {
+        for (int level = TileKey.MIN_LEVEL; level < TileKey.MAX_LEVEL; level++) {
+            long lower = TileKey.part(3, level, 0, 0);
+            long higher = TileKey.part(3, level + 1, 0, 0);
+            assertTrue(lower < higher);
+        }
+    }
+
+    @Test
+    public void cellsHaveDistinctKeys() {
+        Set<Long> keys = new HashSet<>();
+        for (int level = -2; level <= 2; level++) {
+            for (int row = 0; row < 20; row++) {
+                for (int col = 0; col < 20; col++) {
+                    assertTrue(keys.add(TileKey.part(5, level, row, col)));
+                }
+            }
+        }
+        assertTrue(keys.add(TileKey.part(4, 0, 0, 0)));
+        assertTrue(keys.add(TileKey.thumbnail(5)));
+    }
+
+    @Test
+    public void thumbnailKeepsPage() {
+        long key = TileKey.thumbnail(42);
+        assertTrue(TileKey.isThumbnail(key));
+        assertEquals(42, TileKey.page(key));
+    }
+
+    @Test
+    public void levelIsAtLeastAsSharpAsZoom() {
+        assertEquals(0, TileKey.getLevel(1f));
+        assertEquals(1, TileKey.getLevel(1.2f));
+        assertEquals(2, TileKey.getLevel(2f));
+        assertEquals(-2, TileKey.getLevel(0.5f));
+        assertEquals(TileKey.MIN_LEVEL, TileKey.getLevel(1e-12f));
+        for (float zoom = 0.1f; zoom < 20f; zoom *= 1.07f) {
+            int level = TileKey.getLevel(zoom);
+            assertTrue(TileKey.getLevelZoom(level) >= zoom * 0.9999f);
+            assertTrue(TileKey.getLevelZoom(level - 1) < zoom);
+        }
+    }
+}